@@ -0,0 +1,163 @@
+package org.thedryden.workmanager;
+
+import org.slf4j.Logger;
+
+/***
+ * Adjusts how many workers a WorkerPool runs at once while it runs, between a minimum and a maximum, looking for the most throughput without overloading the host.
+ * Workers are different sizes, so latency is measured as how long each worker took against how long it is expected to take (see WorkerPool.setCriticalPathFirst), which is the same for a small and a large worker on an idle host.
+ * After each window of completions (one completion per worker the limit allows) the limit is adjusted like a gradient limiter.
+ * Workers that finish right after a change were mostly started before it, so the window after a change is only used to let the change settle and the one after that is measured:
+ * <ul>
+ * <li>the recent latency ratio is compared with its long term average, and the limit shrinks in proportion if workers are running slower than usual (by at most half per window)</li>
+ * <li>if the limit was actually reached during the window, there is room to grow by the square root of the limit</li>
+ * <li>if the last change grew the limit and completions per second didn't go up by at least MIN_GAIN, the extra workers aren't helping (or the host is starting to thrash), so the limit is cut by a tenth instead</li>
+ * <li>if the last change cut the limit and completions per second went up by at least MIN_GAIN, the limit is cut again, if they went down it grows back, otherwise it is held for a window before growing again</li>
+ * </ul>
+ * Each change to the limit is logged with LoggingTemplate.concurrencyAdjusted.
+ * @author Matthew Dryden
+ *
+ */
+public class AdaptiveConcurrency {
+	/***
+	 * Weight of each window in the long term latency average.
+	 */
+	public static final double LONG_TERM_WEIGHT = 0.1;
+	/***
+	 * How far towards its target the limit moves each window.
+	 */
+	public static final double SMOOTHING = 0.5;
+	/***
+	 * How much completions per second have to go up after the limit grows for the growth to be kept.
+	 */
+	public static final double MIN_GAIN = 0.05;
+
+	protected final int min;
+	protected final int max;
+	protected volatile int limit;
+	protected double exactLimit;
+	protected double longRatio;
+	protected double lastThroughput;
+	protected int lastDirection;
+	protected boolean settling;
+	protected int samples;
+	protected int ratioSamples;
+	protected double ratioSum;
+	protected int peakRunning;
+	protected Timer window;
+
+	/***
+	 * Creates a controller that starts at min and adjusts between min and max.
+	 * @param min the fewest workers that will ever be allowed to run at once, at least 1
+	 * @param max the most workers that will ever be allowed to run at once
+	 */
+	public AdaptiveConcurrency(int min, int max) {
+		this(min, max, min);
+	}
+	/***
+	 * Creates a controller that starts at initial and adjusts between min and max.
+	 * @param min the fewest workers that will ever be allowed to run at once, at least 1
+	 * @param max the most workers that will ever be allowed to run at once
+	 * @param initial the number of workers allowed to run at once to begin with
+	 */
+	public AdaptiveConcurrency(int min, int max, int initial) {
+		if(min < 1 || max < min)
+			throw new IllegalArgumentException("min must be at least 1 and max at least min, got min " + min + " and max " + max);
+		this.min = min;
+		this.max = max;
+		this.limit = Math.max(min, Math.min(max, initial));
+		this.exactLimit = limit;
+		this.longRatio = -1;
+		this.lastThroughput = -1;
+		this.lastDirection = 0;
+		this.settling = false;
+		this.window = null;
+		resetWindow();
+	}
+	/***
+	 * Returns the number of workers currently allowed to run at once.
+	 * @return the number of workers currently allowed to run at once.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+	/***
+	 * Returns the fewest workers that will ever be allowed to run at once.
+	 * @return the minimum limit
+	 */
+	public int getMin() {
+		return min;
+	}
+	/***
+	 * Returns the most workers that will ever be allowed to run at once.
+	 * @return the maximum limit
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/*
+	 * Called each time a worker finishes. expected is how long it was expected to take, or 0 if unknown, and running is the number of workers (and subtasks) running when it finished, including itself.
+	 */
+	synchronized void sample(long milliseconds, long expected, int running, Logger logger) {
+		if(window == null)
+			window = new Timer().start();
+		samples++;
+		peakRunning = Math.max(peakRunning, running);
+		if(expected > 0) {
+			ratioSum += (double) Math.max(milliseconds, 1) / expected;
+			ratioSamples++;
+		}
+		if(samples < limit)
+			return;
+		if(settling) {
+			settling = false;
+			resetWindow();
+			return;
+		}
+
+		double seconds = Math.max(window.getNanoDuration(), 1) / 1_000_000_000.0;
+		double throughput = samples / seconds;
+		double shortRatio = ratioSamples == 0 ? 1 : ratioSum / ratioSamples;
+		longRatio = longRatio < 0 ? shortRatio : (1 - LONG_TERM_WEIGHT) * longRatio + LONG_TERM_WEIGHT * shortRatio;
+
+		double gradient = Math.max(0.5, Math.min(1.0, longRatio / shortRatio));
+		double target;
+		boolean cut = false;
+		boolean gained = lastThroughput > 0 && throughput >= lastThroughput * (1 + MIN_GAIN);
+		boolean lost = lastThroughput > 0 && throughput < lastThroughput * (1 - MIN_GAIN);
+		if((lastDirection > 0 && !gained) || (lastDirection < 0 && gained)) {
+			//Going this way is helping, or growing didn't, so cut
+			target = exactLimit * 0.9;
+			cut = true;
+		} else if(lastDirection < 0 && !lost) {
+			//The cut made no difference, so hold here for a window
+			target = exactLimit * gradient;
+		} else {
+			double headroom = peakRunning >= limit ? Math.sqrt(limit) : 0;
+			target = exactLimit * gradient + headroom;
+		}
+		exactLimit = (1 - SMOOTHING) * exactLimit + SMOOTHING * target;
+		//A cut that rounds back to the same limit would never be measured, so always cut by at least one
+		if(cut)
+			exactLimit = Math.min(exactLimit, limit - 1);
+		exactLimit = Math.max(min, Math.min(max, exactLimit));
+		int newLimit = (int) Math.round(exactLimit);
+		lastDirection = Integer.compare(newLimit, limit);
+		lastThroughput = throughput;
+		if(newLimit != limit) {
+			LoggingTemplate.log(logger, LoggingTemplate.getConcurrencyAdjustedLevel(), LoggingTemplate.getConcurrencyAdjusted(), limit, newLimit, String.format("%.2f", throughput), String.format("%.2f", shortRatio));
+			limit = newLimit;
+			settling = true;
+		}
+		resetWindow();
+	}
+
+	private void resetWindow() {
+		samples = 0;
+		ratioSamples = 0;
+		ratioSum = 0;
+		peakRunning = 0;
+		if(window != null)
+			window.start();
+	}
+}
@@ -0,0 +1,76 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/***
+ * Slot accounting for a WorkerPool: how many of its maxThreadCount slots are in use, shared by every pool run and every RecursiveWorker subtask.
+ * Taking slots is a compare and set on the count, checked against the limit on every attempt, so the count is exact and never goes over the limit, whatever the limit is changed to while pools run.
+ * One waiting owner at a time can reserve slots (see tryAcquire), reserved slots don't count as free for anyone else. The reservation only decides who goes first, a reservation made while someone else is taking slots may let them through once more.
+ * @author Matthew Dryden
+ *
+ */
+class Admission {
+	private final AtomicInteger inUse;
+	private final AtomicReference<Reservation> reservation;
+
+	Admission() {
+		inUse = new AtomicInteger();
+		reservation = new AtomicReference<>();
+	}
+
+	/*
+	 * Takes weight slots, or every slot if weight is more than the limit so a heavy worker can still run on its own, and returns the number taken, or 0 if they aren't free.
+	 * Slots reserved by another owner don't count as free. Passing an owner reserves the slots for it if nobody else has, until it takes them or calls cancelReservation.
+	 */
+	int tryAcquire(int weight, int limit, Object owner) {
+		limit = Math.max(limit, 1);
+		int slots = Math.min(Math.max(weight, 1), limit);
+		Reservation current = reservation.get();
+		if(owner != null && current == null) {
+			Reservation mine = new Reservation(owner, slots);
+			current = reservation.compareAndSet(null, mine) ? mine : reservation.get();
+		}
+		int reserved = current == null || current.owner == owner ? 0 : current.slots;
+		while(true) {
+			int used = inUse.get();
+			if(used + slots > limit - reserved)
+				return 0;
+			if(inUse.compareAndSet(used, used + slots))
+				break;
+		}
+		if(current != null && current.owner == owner)
+			reservation.compareAndSet(current, null);
+		return slots;
+	}
+
+	void release(int slots) {
+		inUse.addAndGet(-slots);
+	}
+
+	void cancelReservation(Object owner) {
+		Reservation current = reservation.get();
+		if(current != null && current.owner == owner)
+			reservation.compareAndSet(current, null);
+	}
+
+	//Free slots not reserved by anyone
+	int getFree(int limit) {
+		Reservation current = reservation.get();
+		return limit - inUse.get() - (current == null ? 0 : current.slots);
+	}
+
+	int getInUse() {
+		return inUse.get();
+	}
+
+	private static class Reservation {
+		private final Object owner;
+		private final int slots;
+
+		private Reservation(Object owner, int slots) {
+			this.owner = owner;
+			this.slots = slots;
+		}
+	}
+}
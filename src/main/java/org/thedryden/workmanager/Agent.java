@@ -0,0 +1,294 @@
+package org.thedryden.workmanager;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * Runs workers leased from a Coordinator, usually in a JVM, or on a machine, of its own. Register a factory for each kind of worker the coordinator's RemoteWorkers name, then call run, which connects and runs whatever it is leased until the connection closes.
+ * <pre>
+ * new Agent("coordinator.example.com", 7070).setSlots(8)
+ * 	.register("LoadCustomers", threadName -&gt; new LoadCustomers())
+ * 	.run();
+ * </pre>
+ * Anything without a factory is created by the default factory, which by default treats the factory key as the name of a class with a no argument constructor. main does just that, so an agent for workers on the classpath needs no code at all.
+ * Each lease is one attempt: the worker is created afresh, with the thread name of the RemoteWorker and no retries, run, and its status reported. Retries, timeouts and precedence constraints are all handled by the WorkerPool running the RemoteWorker.
+ * @author Matthew Dryden
+ *
+ */
+public class Agent implements Closeable {
+	/***
+	 * Default number of milliseconds between heartbeats
+	 */
+	public static final long DEFAULT_HEARTBEAT_MILLISECONDS = 1_000;
+	protected Logger logger;
+	protected String host;
+	protected int port;
+	protected String name;
+	protected int slots;
+	protected long heartbeatMilliseconds;
+	protected Map<String,Function<String,WorkerInterface>> factories;
+	protected Function<String,WorkerInterface> defaultFactory;
+	private final Map<Long,Running> running;
+	private volatile Socket socket;
+	private volatile Writer out;
+	private volatile boolean closed;
+
+	/***
+	 * Creates an agent for the coordinator at the passed host and port, with a slot for each processor. Nothing happens until run is called.
+	 * @param host the host the coordinator is on
+	 * @param port the port the coordinator listens on
+	 */
+	public Agent(String host, int port) {
+		logger = LoggerFactory.getLogger(this.getClass().getSimpleName());
+		this.host = host;
+		this.port = port;
+		name = ManagementFactory.getRuntimeMXBean().getName();
+		slots = Runtime.getRuntime().availableProcessors();
+		heartbeatMilliseconds = DEFAULT_HEARTBEAT_MILLISECONDS;
+		factories = new ConcurrentHashMap<>();
+		defaultFactory = Agent::newInstance;
+		running = new ConcurrentHashMap<>();
+		closed = false;
+	}
+	/***
+	 * Connects to the coordinator and runs workers it leases from the command line. Anything leased is created from the class named by its factory key.
+	 * @param args host, port, and optionally the number of slots
+	 * @throws IOException thrown if the coordinator can't be reached
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("Usage: Agent host port [slots]");
+			System.exit(-1);
+		}
+		Agent anAgent = new Agent(args[0], Integer.parseInt(args[1]));
+		if(args.length > 2)
+			anAgent.setSlots(Integer.parseInt(args[2]));
+		anAgent.run();
+	}
+	/***
+	 * Sets the name the agent registers with, which shows up in the coordinator's log. Defaults to the process id and host name.
+	 * @param name the name of the agent
+	 * @return this - for method chaining
+	 */
+	public Agent setName(String name) {
+		this.name = name;
+		return this;
+	}
+	/***
+	 * Returns the name the agent registers with.
+	 * @return the current value of name
+	 */
+	public String getName() {
+		return name;
+	}
+	/***
+	 * Sets how many workers the agent runs at once. Defaults to the number of processors.
+	 * @param slots how many workers the agent runs at once
+	 * @return this - for method chaining
+	 */
+	public Agent setSlots(int slots) {
+		this.slots = slots;
+		return this;
+	}
+	/***
+	 * Returns how many workers the agent runs at once.
+	 * @return the current value of slots
+	 */
+	public int getSlots() {
+		return slots;
+	}
+	/***
+	 * Sets how often the agent tells the coordinator it is still alive. Keep it well under the coordinator's lease timeout.
+	 * @param heartbeatMilliseconds milliseconds between heartbeats
+	 * @return this - for method chaining
+	 */
+	public Agent setHeartbeatMilliseconds(long heartbeatMilliseconds) {
+		this.heartbeatMilliseconds = heartbeatMilliseconds;
+		return this;
+	}
+	/***
+	 * Returns how often the agent tells the coordinator it is still alive.
+	 * @return the current value of heartbeatMilliseconds
+	 */
+	public long getHeartbeatMilliseconds() {
+		return heartbeatMilliseconds;
+	}
+	/***
+	 * Registers the factory that creates workers leased under the passed factory key. The factory is passed the thread name of the RemoteWorker.
+	 * @param factoryKey the factory key of the RemoteWorkers it creates workers for
+	 * @param factory creates a worker from its thread name
+	 * @return this - for method chaining
+	 */
+	public Agent register(String factoryKey, Function<String,WorkerInterface> factory) {
+		factories.put(factoryKey, factory);
+		return this;
+	}
+	/***
+	 * Sets the factory used for factory keys nothing was registered for. It is passed the factory key, rather than the thread name. Defaults to creating an instance of the class the factory key names.
+	 * @param defaultFactory creates a worker from its factory key
+	 * @return this - for method chaining
+	 */
+	public Agent setDefaultFactory(Function<String,WorkerInterface> defaultFactory) {
+		this.defaultFactory = defaultFactory;
+		return this;
+	}
+	/***
+	 * Connects to the coordinator and runs the workers it leases, returning once the connection closes, either because close was called or the coordinator went away.
+	 * @throws IOException thrown if the coordinator can't be reached
+	 */
+	public void run() throws IOException {
+		socket = new Socket(host, port);
+		out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+		ExecutorService workers = Executors.newFixedThreadPool(slots);
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread aThread = new Thread(r, "Agent heartbeat");
+			aThread.setDaemon(true);
+			return aThread;
+		});
+		try(BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+			send("HELLO\t" + name + "\t" + slots);
+			//One request per slot, each finished worker asks for the next
+			for(int i = 0; i < slots; i++)
+				send("LEASE");
+			heartbeat.scheduleWithFixedDelay(() -> send("HEARTBEAT"), heartbeatMilliseconds, heartbeatMilliseconds, TimeUnit.MILLISECONDS);
+			String aLine;
+			while((aLine = in.readLine()) != null) {
+				String[] fields = aLine.split("\t");
+				if(fields[0].equals("RUN")) {
+					long id = Long.parseLong(fields[1]);
+					Running aRun = new Running(fields[2], fields[3]);
+					running.put(id, aRun);
+					workers.execute(() -> execute(id, aRun));
+				} else if(fields[0].equals("CANCEL")) {
+					Running aRun = running.get(Long.parseLong(fields[1]));
+					if(aRun != null)
+						aRun.cancel();
+				}
+			}
+		} catch (IOException e) {
+			if(!closed)
+				throw e;
+		} finally {
+			heartbeat.shutdownNow();
+			workers.shutdownNow();
+			socket.close();
+		}
+	}
+	/***
+	 * Disconnects from the coordinator, which gives anything still running here to another agent, and cancels it here.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		for(Running aRun : running.values())
+			aRun.cancel();
+		if(socket != null)
+			socket.close();
+	}
+
+	private void execute(long id, Running aRun) {
+		Status status;
+		try {
+			WorkerInterface aWorker = create(aRun.threadName, aRun.factoryKey);
+			aWorker.setThreadName(aRun.threadName);
+			aWorker.setRetry(0, 0);
+			if(aRun.start(aWorker)) {
+				aWorker.run();
+				status = aWorker.getStatus();
+			} else {
+				status = Status.CANCELLED;
+			}
+		} catch (Exception e) {
+			LoggingTemplate.log(logger, LoggingTemplate.getWorkerErrorLevel(), LoggingTemplate.getWorkerError(), aRun.threadName, e);
+			status = Status.FAILED;
+		}
+		aRun.finish();
+		running.remove(id);
+		send("DONE\t" + id + "\t" + status);
+		send("LEASE");
+	}
+
+	private WorkerInterface create(String threadName, String factoryKey) {
+		Function<String,WorkerInterface> factory = factories.get(factoryKey);
+		if(factory != null)
+			return factory.apply(threadName);
+		return defaultFactory.apply(factoryKey);
+	}
+
+	private static WorkerInterface newInstance(String className) {
+		try {
+			return (WorkerInterface) Class.forName(className).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("No factory is registered for " + className + ", and it is not the name of a WorkerInterface with a no argument constructor", e);
+		}
+	}
+
+	private void send(String message) {
+		try {
+			synchronized(this) {
+				out.write(message);
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			//The connection is gone, run sees it and returns
+		}
+	}
+
+	//A leased worker, from when it is leased until it reports back
+	private static class Running {
+		private final String threadName;
+		private final String factoryKey;
+		private WorkerInterface worker;
+		private Thread thread;
+		private boolean cancelled;
+
+		private Running(String threadName, String factoryKey) {
+			this.threadName = threadName;
+			this.factoryKey = factoryKey;
+			this.worker = null;
+			this.thread = null;
+			this.cancelled = false;
+		}
+
+		//Returns false if it was cancelled before it started
+		private synchronized boolean start(WorkerInterface worker) {
+			if(cancelled)
+				return false;
+			this.worker = worker;
+			this.thread = Thread.currentThread();
+			return true;
+		}
+
+		private synchronized void finish() {
+			thread = null;
+			//A cancel that came in as the worker finished mustn't interrupt the next one on this thread
+			Thread.interrupted();
+		}
+
+		private synchronized void cancel() {
+			cancelled = true;
+			if(worker instanceof Worker)
+				((Worker) worker).getCancellationToken().cancel(false);
+			if(thread != null)
+				thread.interrupt();
+		}
+	}
+}
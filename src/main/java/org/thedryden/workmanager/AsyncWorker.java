@@ -0,0 +1,159 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongConsumer;
+
+/***
+ * A Worker for work that mostly waits, such as remote calls. Instead of worker, implement workerAsync to start the work and return a CompletionStage that completes when it is done.
+ * When run by a WorkerPool, workerAsync is called on a pool thread, and once it returns the worker gives back its thread and its slots of maxThreadCount while the stage is pending, so thousands of calls can be in flight on a handful of threads. Resource permits are held until the stage completes, so use WorkerPool.setResourceLimit to cap how many are in flight at once.
+ * Status, retries, timing and logging are the same as Worker: a stage that completes exceptionally (or workerAsync throwing) is a failed attempt, and between attempts the worker waits out the retry policy holding no thread, slots or permits. Every attempt, retries included, calls workerAsync on a thread from the WorkerPool's backend, never on its scheduler.
+ * Anything waiting on this worker starts once the stage completes, not when workerAsync returns.
+ *
+ * For example:
+ * <pre>
+ * public CompletionStage&lt;Void&gt; workerAsync() {
+ * 	return client.sendAsync(request, BodyHandlers.discarding()).thenAccept(response -&gt; check(response));
+ * }
+ * </pre>
+ * @author Matthew Dryden
+ *
+ */
+public abstract class AsyncWorker extends Worker {
+	private CompletableFuture<Void> current;
+	private CompletionStage<Void> pending;
+	private boolean cancelled;
+
+	/***
+	 * Creates a new async worker, see Worker for details.
+	 */
+	public AsyncWorker() {
+		super();
+		current = null;
+		cancelled = false;
+	}
+	/***
+	 * Starts the work and returns a stage that completes when it is done. Should return quickly, the waiting belongs in the stage.
+	 * @return a stage that completes normally on success, or exceptionally on failure. null is treated as already done.
+	 * @throws Exception fails the attempt, same as the stage completing exceptionally
+	 */
+	public abstract CompletionStage<Void> workerAsync() throws Exception;
+	/***
+	 * Runs workerAsync and waits for its stage, for when this worker is run on its own rather than by a WorkerPool.
+	 */
+	@Override
+	public void worker() throws Exception {
+		CompletionStage<Void> stage = workerAsync();
+		if(stage == null)
+			return;
+		try {
+			stage.toCompletableFuture().get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/*
+	 * The WorkerPool's version of run: starts the first attempt and returns without waiting for it. done is called once, from whichever thread completes the last attempt.
+	 * An attempt that fails with retries left calls retry with the milliseconds to wait instead, and the WorkerPool calls resumeAsync for the next attempt once the wait is over, on a thread from its backend.
+	 */
+	void runAsync(LongConsumer retry, Runnable done) {
+		synchronized(this) {
+			cancelled = false;
+		}
+		if(!begin()) {
+			done.run();
+			return;
+		}
+		attemptAsync(retry, done);
+	}
+
+	//Starts the next attempt after waiting to retry
+	void resumeAsync(LongConsumer retry, Runnable done) {
+		attemptAsync(retry, done);
+	}
+
+	private void attemptAsync(LongConsumer retry, Runnable done) {
+		CancellationToken token = getCancellationToken();
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		synchronized(this) {
+			current = future;
+			if(cancelled)
+				future.cancel(true);
+		}
+		try {
+			CompletionStage<Void> stage = workerAsync();
+			synchronized(this) {
+				pending = stage;
+			}
+			if(stage == null)
+				future.complete(null);
+			else
+				stage.whenComplete((result, error) -> {
+					if(error == null)
+						future.complete(null);
+					else
+						future.completeExceptionally(error);
+				});
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+		}
+		future.whenComplete((result, error) -> {
+			if(error == null) {
+				//Completing after the run was cancelled, even without an error, doesn't mean the work got done
+				if(settle(token, stoppedStatus(token, Status.SUCCESS)))
+					end();
+				finish(done);
+				return;
+			}
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			boolean stop;
+			synchronized(this) {
+				stop = cancelled || cause instanceof CancellationException;
+			}
+			if(stop) {
+				LoggingTemplate.log(logger, LoggingTemplate.getWorkerErrorLevel(), LoggingTemplate.getWorkerError(), getThreadName(), cause);
+				giveUp();
+				finish(done);
+				return;
+			}
+			long delay = failed(cause, token);
+			if(delay < 0) {
+				finish(done);
+			} else {
+				synchronized(this) {
+					current = null;
+					pending = null;
+				}
+				retry.accept(delay);
+			}
+		});
+	}
+
+	private void finish(Runnable done) {
+		synchronized(this) {
+			current = null;
+			pending = null;
+		}
+		done.run();
+	}
+
+	//Cancels the pending stage, if any, and stops any further retries
+	synchronized void cancelAsync() {
+		cancelled = true;
+		if(current != null)
+			current.cancel(true);
+		if(pending != null) {
+			try {
+				pending.toCompletableFuture().cancel(true);
+			} catch (UnsupportedOperationException e) {
+				//A stage that can't be turned into a future can't be cancelled either, the worker has already failed anyway
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.CancellationException;
+
+/***
+ * Tells a running worker that it should stop, because it ran past its timeout, its pool ran past its timeout, or the pool is cancelling running workers after a failure. Get it from Worker.getCancellationToken.
+ * The thread running the worker is interrupted as well, but work that doesn't block (a loop over rows for instance) never sees an interrupt, so it should check isCancelled now and then. Checking is a single volatile read.
+ * Once cancelled a token stays cancelled. Each run of a worker by a WorkerPool gets a new token.
+ * @author Matthew Dryden
+ *
+ */
+public class CancellationToken {
+	private volatile boolean cancelled;
+	private volatile boolean timedOut;
+
+	/***
+	 * Creates a token that is not cancelled.
+	 */
+	public CancellationToken() {
+		cancelled = false;
+		timedOut = false;
+	}
+	/***
+	 * Returns true once the worker should stop.
+	 * @return true once the worker should stop
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	/***
+	 * Returns true if the worker should stop because it, or its pool, ran past its timeout.
+	 * @return true if the worker should stop because of a timeout
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+	/***
+	 * Throws a CancellationException once the worker should stop, which fails the attempt without a retry.
+	 * @throws CancellationException thrown if the worker should stop
+	 */
+	public void throwIfCancelled() throws CancellationException {
+		if(cancelled)
+			throw new CancellationException(timedOut ? "Timed out" : "Cancelled");
+	}
+
+	void cancel(boolean timedOut) {
+		//timedOut is written first, so anyone who sees cancelled also sees why
+		if(timedOut)
+			this.timedOut = true;
+		cancelled = true;
+	}
+}
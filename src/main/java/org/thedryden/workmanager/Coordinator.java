@@ -0,0 +1,393 @@
+package org.thedryden.workmanager;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * Runs workers on other machines (or other JVMs on this one). Agents (see Agent) connect to the coordinator over TCP and lease work from it, and a RemoteWorker added to an ordinary WorkerPool runs by leasing itself out and waiting for an agent to report back.
+ * So the WorkerPool still owns the graph: precedence constraints, pool order, retries, timeouts, and everything else work just as they do for local workers. RemoteWorker is an AsyncWorker, so a leased worker doesn't hold a thread or a slot while it waits, the agents' slots are what limit how many run at once.
+ * Agents send a heartbeat while connected. One that is silent for longer than the lease timeout, or whose connection drops, is dropped, and the workers it had leased are given to the next agent with a free slot, without counting as a retry.
+ * There is no authentication or encryption: anything that can reach the port can register as an agent, take leases, and report workers as succeeded without running them. So by default the coordinator only listens on the loopback address, for agents on the same machine. Only bind it to another address on a network where every host is trusted, and never expose the port beyond that.
+ * The protocol is one line per message, fields split by tabs. From the agent: HELLO name slots, LEASE (asks for one worker), HEARTBEAT, and DONE lease status. From the coordinator: RUN lease threadName factoryKey, and CANCEL lease.
+ * @author Matthew Dryden
+ *
+ */
+public class Coordinator implements Closeable {
+	/***
+	 * Default number of milliseconds an agent can be silent before it is dropped and its leases given to another agent
+	 */
+	public static final long DEFAULT_LEASE_TIMEOUT_MILLISECONDS = 10_000;
+	protected Logger logger;
+	protected volatile long leaseTimeoutMilliseconds;
+	private final ServerSocket server;
+	//Every open connection, including those that haven't registered yet
+	private final Set<Connection> connections;
+	//Connections that have registered, so can be given work
+	private final List<Connection> agents;
+	private final Map<Long,Lease> leases;
+	//Leases waiting for an agent with a free slot, oldest first. Guarded by this.
+	private final Deque<Lease> pending;
+	private final AtomicLong nextLease;
+	private final ScheduledExecutorService reaper;
+	private final Thread acceptor;
+	//Written while holding this, so nothing is queued after close has failed what was pending
+	private volatile boolean closed;
+
+	/***
+	 * Starts a coordinator listening on the passed port of the loopback address, so only agents on this machine can connect.
+	 * @param port the port agents connect to, 0 for any free port (see getPort)
+	 * @throws IOException thrown if the port can't be listened on
+	 */
+	public Coordinator(int port) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+	/***
+	 * Starts a coordinator listening on the passed address and port. Agents aren't authenticated, so only pass an address that untrusted hosts can't reach.
+	 * @param bindAddress the local address to listen on, null for every address
+	 * @param port the port agents connect to, 0 for any free port (see getPort)
+	 * @throws IOException thrown if the port can't be listened on
+	 */
+	public Coordinator(InetAddress bindAddress, int port) throws IOException {
+		logger = LoggerFactory.getLogger(this.getClass().getSimpleName());
+		leaseTimeoutMilliseconds = DEFAULT_LEASE_TIMEOUT_MILLISECONDS;
+		server = new ServerSocket(port, 50, bindAddress);
+		connections = ConcurrentHashMap.newKeySet();
+		agents = new CopyOnWriteArrayList<>();
+		leases = new ConcurrentHashMap<>();
+		pending = new ArrayDeque<>();
+		nextLease = new AtomicLong();
+		closed = false;
+		reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread aThread = new Thread(r, "Coordinator reaper");
+			aThread.setDaemon(true);
+			return aThread;
+		});
+		reaper.scheduleWithFixedDelay(this::reap, 100, 100, TimeUnit.MILLISECONDS);
+		acceptor = new Thread(this::accept, "Coordinator " + server.getLocalPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	/***
+	 * Returns the port agents connect to.
+	 * @return the port agents connect to
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+	/***
+	 * Sets how long an agent can go without sending anything (it sends a heartbeat at least every Agent.getHeartbeatMilliseconds) before it is dropped and its leases given to another agent.
+	 * @param leaseTimeoutMilliseconds how long an agent can be silent, in milliseconds
+	 * @return this - for method chaining
+	 */
+	public Coordinator setLeaseTimeoutMilliseconds(long leaseTimeoutMilliseconds) {
+		this.leaseTimeoutMilliseconds = leaseTimeoutMilliseconds;
+		return this;
+	}
+	/***
+	 * Returns how long an agent can be silent before it is dropped.
+	 * @return the current value of leaseTimeoutMilliseconds
+	 */
+	public long getLeaseTimeoutMilliseconds() {
+		return leaseTimeoutMilliseconds;
+	}
+	/***
+	 * Returns the number of agents connected.
+	 * @return the number of agents connected
+	 */
+	public int getAgentCount() {
+		return agents.size();
+	}
+	/***
+	 * Returns the total number of slots of every agent connected.
+	 * @return the total number of slots of every agent connected
+	 */
+	public int getSlots() {
+		int output = 0;
+		for(Connection anAgent : agents)
+			output += anAgent.slots;
+		return output;
+	}
+	/***
+	 * Blocks until at least the passed number of agents are connected, or waitMilliseconds elapses.
+	 * @param agentCount the number of agents to wait for
+	 * @param waitMilliseconds the longest to wait
+	 * @return true if the agents connected in time
+	 * @throws InterruptedException thrown if interrupted while waiting
+	 */
+	public boolean awaitAgents(int agentCount, long waitMilliseconds) throws InterruptedException {
+		long end = System.currentTimeMillis() + waitMilliseconds;
+		while(agents.size() < agentCount) {
+			if(System.currentTimeMillis() >= end)
+				return false;
+			Thread.sleep(10);
+		}
+		return true;
+	}
+	/***
+	 * Stops listening and disconnects every agent. Anything still leased fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			closed = true;
+		}
+		reaper.shutdownNow();
+		server.close();
+		for(Connection aConnection : connections)
+			aConnection.close();
+		synchronized(this) {
+			for(Lease aLease : pending)
+				aLease.result.completeExceptionally(new IOException("Coordinator closed"));
+			pending.clear();
+		}
+		for(Lease aLease : leases.values())
+			aLease.result.completeExceptionally(new IOException("Coordinator closed"));
+	}
+
+	/*
+	 * Leases the worker out, the future completes once an agent reports back, exceptionally if the worker didn't succeed or the coordinator closed.
+	 * Cancelling the future (the worker timed out or was cancelled) takes the lease back, and tells the agent running it, if any, to cancel it.
+	 */
+	CompletableFuture<Void> lease(RemoteWorker worker) {
+		Lease aLease = new Lease(nextLease.incrementAndGet(), worker.getThreadName(), worker.getFactoryKey());
+		synchronized(this) {
+			if(closed) {
+				aLease.result.completeExceptionally(new IOException("Coordinator closed"));
+				return aLease.result;
+			}
+			leases.put(aLease.id, aLease);
+			pending.add(aLease);
+		}
+		aLease.result.whenComplete((result, error) -> {
+			leases.remove(aLease.id);
+			if(aLease.result.isCancelled())
+				cancel(aLease);
+		});
+		assign();
+		return aLease.result;
+	}
+
+	private void cancel(Lease aLease) {
+		Connection agent;
+		synchronized(this) {
+			pending.remove(aLease);
+			agent = aLease.agent;
+			aLease.agent = null;
+			if(agent != null)
+				agent.leased.remove(aLease);
+		}
+		if(agent != null)
+			agent.send("CANCEL\t" + aLease.id);
+	}
+
+	//Hands pending leases to agents that have asked for work, oldest lease first
+	private void assign() {
+		List<Object[]> toSend = new ArrayList<>();
+		synchronized(this) {
+			for(Connection anAgent : agents) {
+				while(anAgent.credits > 0 && !pending.isEmpty() && !anAgent.dead) {
+					Lease aLease = pending.poll();
+					anAgent.credits--;
+					aLease.agent = anAgent;
+					anAgent.leased.add(aLease);
+					toSend.add(new Object[] {anAgent, aLease});
+				}
+			}
+		}
+		//Sent outside the lock, a slow agent shouldn't hold up the others
+		for(Object[] aSend : toSend) {
+			Lease aLease = (Lease) aSend[1];
+			((Connection) aSend[0]).send("RUN\t" + aLease.id + "\t" + aLease.threadName + "\t" + aLease.factoryKey);
+		}
+	}
+
+	private void accept() {
+		while(!closed) {
+			try {
+				Socket aSocket = server.accept();
+				Connection anAgent = new Connection(aSocket);
+				synchronized(this) {
+					if(closed) {
+						anAgent.close();
+						return;
+					}
+					connections.add(anAgent);
+				}
+				Thread reader = new Thread(anAgent::read, "Coordinator agent " + aSocket.getRemoteSocketAddress());
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				//Closed
+			}
+		}
+	}
+
+	//Drops connections that have been silent for longer than the lease timeout, registered or not
+	private void reap() {
+		long now = System.currentTimeMillis();
+		for(Connection anAgent : connections)
+			if(now - anAgent.lastSeen > leaseTimeoutMilliseconds)
+				lost(anAgent);
+	}
+
+	//The agent is gone, so everything it had leased goes back to the front of the queue for another agent
+	private void lost(Connection anAgent) {
+		List<Lease> requeued;
+		synchronized(this) {
+			if(anAgent.dead)
+				return;
+			anAgent.dead = true;
+			connections.remove(anAgent);
+			agents.remove(anAgent);
+			requeued = new ArrayList<>(anAgent.leased);
+			anAgent.leased.clear();
+			for(int i = requeued.size() - 1; i >= 0; i--) {
+				requeued.get(i).agent = null;
+				pending.addFirst(requeued.get(i));
+			}
+		}
+		anAgent.close();
+		if(anAgent.name != null)
+			LoggingTemplate.log(logger, LoggingTemplate.getAgentLostLevel(), LoggingTemplate.getAgentLost(), anAgent.name, requeued.size());
+		assign();
+	}
+
+	private void done(Connection anAgent, long id, String status) {
+		Lease aLease = leases.get(id);
+		synchronized(this) {
+			//Already taken back, or given to another agent after this one was thought dead
+			if(aLease == null || aLease.agent != anAgent)
+				return;
+			aLease.agent = null;
+			anAgent.leased.remove(aLease);
+		}
+		if(Status.SUCCESS.name().equals(status))
+			aLease.result.complete(null);
+		else
+			aLease.result.completeExceptionally(new Exception("Worker " + aLease.threadName + " ended " + status + " on agent " + anAgent.name));
+	}
+
+	//One agent's connection, read by a thread of its own
+	private class Connection {
+		private final Socket socket;
+		private final Writer out;
+		private final Set<Lease> leased;
+		private volatile String name;
+		private volatile int slots;
+		private volatile long lastSeen;
+		//How many more workers the agent has asked for, guarded by the Coordinator
+		private int credits;
+		private volatile boolean dead;
+
+		private Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			this.leased = Collections.newSetFromMap(new ConcurrentHashMap<Lease,Boolean>());
+			this.name = null;
+			this.slots = 0;
+			this.lastSeen = System.currentTimeMillis();
+			this.credits = 0;
+			this.dead = false;
+		}
+
+		private void read() {
+			try(BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+				String aLine;
+				while((aLine = in.readLine()) != null) {
+					lastSeen = System.currentTimeMillis();
+					String[] fields = aLine.split("\t");
+					switch(fields[0]) {
+					case "HELLO":
+						//Registers once, a repeated HELLO is ignored, as is one from a connection already dropped
+						synchronized(Coordinator.this) {
+							if(name != null || dead)
+								break;
+							slots = Integer.parseInt(fields[2]);
+							name = fields[1];
+							agents.add(this);
+						}
+						LoggingTemplate.log(logger, LoggingTemplate.getAgentRegisteredLevel(), LoggingTemplate.getAgentRegistered(), name, slots);
+						break;
+					case "LEASE":
+						synchronized(Coordinator.this) {
+							credits++;
+						}
+						assign();
+						break;
+					case "DONE":
+						done(this, Long.parseLong(fields[1]), fields[2]);
+						break;
+					default:
+						//HEARTBEAT, and anything newer agents send, only shows the agent is alive
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				//Treated the same as the agent disconnecting
+			}
+			lost(this);
+		}
+
+		private void send(String message) {
+			try {
+				synchronized(out) {
+					out.write(message);
+					out.write('\n');
+					out.flush();
+				}
+			} catch (IOException e) {
+				//The reader sees the connection drop and gives the leases to another agent
+				close();
+			}
+		}
+
+		private void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//Already closed
+			}
+		}
+	}
+
+	private static class Lease {
+		private final long id;
+		private final String threadName;
+		private final String factoryKey;
+		private final CompletableFuture<Void> result;
+		//The agent running it, null while waiting for one. Guarded by the Coordinator.
+		private Connection agent;
+
+		private Lease(long id, String threadName, String factoryKey) {
+			this.id = id;
+			this.threadName = threadName;
+			this.factoryKey = factoryKey;
+			this.result = new CompletableFuture<>();
+			this.agent = null;
+		}
+	}
+}
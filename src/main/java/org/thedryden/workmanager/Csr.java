@@ -0,0 +1,82 @@
+package org.thedryden.workmanager;
+
+import java.util.Arrays;
+
+/***
+ * Compressed sparse row adjacency. Row i is stored in targets[offsets[i]] to targets[offsets[i + 1] - 1], which keeps a graph of any size in two int arrays.
+ * @author Matthew Dryden
+ *
+ */
+final class Csr {
+	final int[] offsets;
+	final int[] targets;
+
+	Csr(int[] offsets, int[] targets) {
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	int rows() {
+		return offsets.length - 1;
+	}
+
+	int degree(int row) {
+		return offsets[row + 1] - offsets[row];
+	}
+
+	int[] copyRow(int row) {
+		return Arrays.copyOfRange(targets, offsets[row], offsets[row + 1]);
+	}
+
+	/***
+	 * Collects edges in any order and then lays them out as a Csr, either from source to target or reversed.
+	 */
+	static final class Builder {
+		private final int rows;
+		private int[] from;
+		private int[] to;
+		private int count;
+
+		Builder(int rows) {
+			this.rows = rows;
+			this.from = new int[Math.max(16, rows)];
+			this.to = new int[from.length];
+			this.count = 0;
+		}
+
+		void add(int source, int target) {
+			if(count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				to = Arrays.copyOf(to, count * 2);
+			}
+			from[count] = source;
+			to[count] = target;
+			count++;
+		}
+
+		int size() {
+			return count;
+		}
+
+		Csr build() {
+			return layout(from, to);
+		}
+
+		Csr buildReverse() {
+			return layout(to, from);
+		}
+
+		private Csr layout(int[] source, int[] target) {
+			int[] offsets = new int[rows + 1];
+			for(int i = 0; i < count; i++)
+				offsets[source[i] + 1]++;
+			for(int i = 0; i < rows; i++)
+				offsets[i + 1] += offsets[i];
+			int[] fill = Arrays.copyOf(offsets, rows);
+			int[] targets = new int[count];
+			for(int i = 0; i < count; i++)
+				targets[fill[source[i]]++] = target[i];
+			return new Csr(offsets, targets);
+		}
+	}
+}
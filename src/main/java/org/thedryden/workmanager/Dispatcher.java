@@ -0,0 +1,59 @@
+package org.thedryden.workmanager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Starts ready workers for every pool run that belongs to a WorkerPool. Anything that might let a worker start (a worker becoming ready, a slot being freed, a run being added) calls drain.
+ * Only one thread drains at a time, any thread that calls drain while another is draining just tells it to go around one more time, so no wake up is ever lost and no thread ever blocks.
+ * @author Matthew Dryden
+ *
+ */
+class Dispatcher {
+	private final WorkerPool source;
+	private final List<PoolRun> runs;
+	private final AtomicInteger wip;
+	private int next;
+
+	Dispatcher(WorkerPool source) {
+		this.source = source;
+		this.runs = new CopyOnWriteArrayList<>();
+		this.wip = new AtomicInteger();
+		this.next = 0;
+	}
+
+	void add(PoolRun run) {
+		runs.add(run);
+		drain();
+	}
+
+	void remove(PoolRun run) {
+		runs.remove(run);
+	}
+
+	//Resource permits were freed, so workers parked waiting for them can be tried again
+	void unpark(Set<String> tags) {
+		for(PoolRun aRun : runs)
+			for(String aTag : tags)
+				aRun.unpark(aTag);
+	}
+
+	void drain() {
+		if(wip.getAndIncrement() != 0)
+			return;
+		int missed = 1;
+		do {
+			Object[] snapshot = runs.toArray();
+			if(snapshot.length > 0) {
+				ExecutionBackend backend = source.getExecutionBackend();
+				//Rotate the starting run so one pool can't hog every free slot
+				next = (next + 1) % snapshot.length;
+				for(int i = 0; i < snapshot.length; i++)
+					((PoolRun) snapshot[(next + i) % snapshot.length]).startReady(backend);
+			}
+			missed = wip.addAndGet(-missed);
+		} while(missed != 0);
+	}
+}
@@ -0,0 +1,255 @@
+package org.thedryden.workmanager;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Publishes the WorkerEvents of a WorkerPool to any number of subscribers, get it with WorkerPool.getEventPublisher. On Java 9 and later FlowEventPublisher wraps this as a java.util.concurrent.Flow.Publisher.
+ * Each subscriber has its own bounded buffer, and events are delivered on the executor (ForkJoinPool.commonPool by default) only as fast as the subscriber requests them.
+ * Publishing never waits: if a subscriber's buffer is full the event is dropped for that subscriber and counted (see EventSubscription.getDropped), so a slow subscriber can never hold up the workers. With no subscribers publishing costs nothing.
+ * @author Matthew Dryden
+ *
+ */
+public class EventPublisher {
+	/***
+	 * Default number of events buffered for each subscriber
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 256;
+
+	protected final List<BufferedSubscription> subscriptions;
+	protected int bufferSize;
+	protected Executor executor;
+	protected volatile boolean closed;
+
+	/***
+	 * Creates a publisher that delivers on ForkJoinPool.commonPool, with DEFAULT_BUFFER_SIZE events buffered for each subscriber.
+	 */
+	public EventPublisher() {
+		subscriptions = new CopyOnWriteArrayList<>();
+		bufferSize = DEFAULT_BUFFER_SIZE;
+		executor = ForkJoinPool.commonPool();
+		closed = false;
+	}
+	/***
+	 * Sets the number of events buffered for each subscriber. Only subscribers added afterwards get the new size.
+	 * @param bufferSize the number of events buffered for each subscriber, at least 1
+	 * @return this - for method chaining
+	 */
+	public EventPublisher setBufferSize(int bufferSize) {
+		if(bufferSize < 1)
+			throw new IllegalArgumentException("bufferSize must be at least 1, got " + bufferSize);
+		this.bufferSize = bufferSize;
+		return this;
+	}
+	/***
+	 * Returns the number of events buffered for each subscriber.
+	 * @return the number of events buffered for each subscriber
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	/***
+	 * Sets the executor events are delivered on. Only subscribers added afterwards use it.
+	 * @param executor the executor to deliver events on
+	 * @return this - for method chaining
+	 */
+	public EventPublisher setExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+	/***
+	 * Returns the executor events are delivered on.
+	 * @return the executor events are delivered on
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+	/***
+	 * Adds a subscriber. It receives every event published from now on, as it requests them. If the publisher is already closed the subscriber is completed right away.
+	 * @param subscriber the subscriber to add
+	 */
+	public void subscribe(EventSubscriber subscriber) {
+		if(subscriber == null)
+			throw new NullPointerException("subscriber can't be null");
+		BufferedSubscription subscription = new BufferedSubscription(this, subscriber, bufferSize, executor);
+		if(!closed)
+			subscriptions.add(subscription);
+		subscription.start();
+		if(closed)
+			subscription.complete();
+	}
+	/***
+	 * Returns true if anything is subscribed.
+	 * @return true if anything is subscribed
+	 */
+	public boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+	/***
+	 * Completes every subscriber once it has been delivered what is already buffered. Nothing is published after this.
+	 */
+	public void close() {
+		closed = true;
+		for(BufferedSubscription aSubscription : subscriptions)
+			aSubscription.complete();
+		subscriptions.clear();
+	}
+	/***
+	 * Returns true if close has been called.
+	 * @return true if close has been called
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	void publish(WorkerEvent event) {
+		if(closed)
+			return;
+		for(BufferedSubscription aSubscription : subscriptions)
+			aSubscription.offer(event);
+	}
+
+	void remove(BufferedSubscription subscription) {
+		subscriptions.remove(subscription);
+	}
+
+	/*
+	 * One subscriber's buffer and demand. Only one thread delivers at a time: whoever moves wip off zero schedules drain on the executor, and anyone who signals while it runs makes it go around once more.
+	 */
+	static class BufferedSubscription implements EventSubscription {
+		private final EventPublisher publisher;
+		private final EventSubscriber subscriber;
+		private final Queue<WorkerEvent> buffer;
+		private final Executor executor;
+		private final AtomicLong demand;
+		private final AtomicLong dropped;
+		private final AtomicInteger wip;
+		private volatile boolean started;
+		private volatile boolean cancelled;
+		private volatile boolean completed;
+		private volatile Throwable error;
+
+		BufferedSubscription(EventPublisher publisher, EventSubscriber subscriber, int bufferSize, Executor executor) {
+			this.publisher = publisher;
+			this.subscriber = subscriber;
+			this.buffer = new ArrayBlockingQueue<>(bufferSize);
+			this.executor = executor;
+			this.demand = new AtomicLong();
+			this.dropped = new AtomicLong();
+			this.wip = new AtomicInteger();
+		}
+
+		void start() {
+			signal();
+		}
+
+		void offer(WorkerEvent event) {
+			if(cancelled)
+				return;
+			if(!buffer.offer(event))
+				dropped.incrementAndGet();
+			else if(demand.get() > 0)
+				signal();
+		}
+
+		void complete() {
+			completed = true;
+			signal();
+		}
+
+		@Override
+		public void request(long n) {
+			if(n < 1) {
+				error = new IllegalArgumentException("request must ask for at least 1 event, got " + n);
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					next = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while(!demand.compareAndSet(current, next));
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			publisher.remove(this);
+			signal();
+		}
+
+		@Override
+		public long getDropped() {
+			return dropped.get();
+		}
+
+		private void signal() {
+			if(wip.getAndIncrement() != 0)
+				return;
+			try {
+				executor.execute(this::drain);
+			} catch (RejectedExecutionException e) {
+				//Nowhere to deliver on, so this subscriber is done
+				cancelled = true;
+				publisher.remove(this);
+				buffer.clear();
+				wip.set(0);
+			}
+		}
+
+		private void drain() {
+			int missed = 1;
+			do {
+				if(!started) {
+					started = true;
+					if(!call(() -> subscriber.onSubscribe(this)))
+						return;
+				}
+				while(!cancelled && demand.get() > 0) {
+					WorkerEvent event = buffer.poll();
+					if(event == null)
+						break;
+					if(demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+					if(!call(() -> subscriber.onNext(event)))
+						return;
+				}
+				if(!cancelled && error != null) {
+					cancelled = true;
+					publisher.remove(this);
+					call(() -> subscriber.onError(error));
+					return;
+				}
+				if(!cancelled && completed && buffer.isEmpty()) {
+					cancelled = true;
+					call(subscriber::onComplete);
+					return;
+				}
+				if(cancelled)
+					buffer.clear();
+				missed = wip.addAndGet(-missed);
+			} while(missed != 0);
+		}
+
+		//A subscriber that throws has broken the contract, so it is cancelled rather than being allowed to stop delivery to anyone else
+		private boolean call(Runnable signal) {
+			try {
+				signal.run();
+				return true;
+			} catch (RuntimeException e) {
+				cancelled = true;
+				publisher.remove(this);
+				buffer.clear();
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package org.thedryden.workmanager;
+
+/***
+ * Receives the events published by an EventPublisher. The methods have the same contract as java.util.concurrent.Flow.Subscriber: onSubscribe first, then onNext no more times than requested, then at most one of onComplete or onError.
+ * Methods are called one at a time, on the EventPublisher's executor, never on a thread running workers.
+ * @author Matthew Dryden
+ *
+ */
+public interface EventSubscriber {
+	/***
+	 * Called once, before anything else. Nothing is delivered until request is called on the subscription.
+	 * @param subscription used to request events and to cancel
+	 */
+	public void onSubscribe(EventSubscription subscription);
+	/***
+	 * Called with each event, in the order they happened.
+	 * @param event the next event
+	 */
+	public void onNext(WorkerEvent event);
+	/***
+	 * Called if the subscription fails, for instance request was called with a number less than 1. Nothing is delivered afterwards.
+	 * @param error why it failed
+	 */
+	public void onError(Throwable error);
+	/***
+	 * Called once the EventPublisher is closed and every buffered event has been delivered.
+	 */
+	public void onComplete();
+}
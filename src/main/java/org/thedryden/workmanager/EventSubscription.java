@@ -0,0 +1,23 @@
+package org.thedryden.workmanager;
+
+/***
+ * Links an EventSubscriber to an EventPublisher, same contract as java.util.concurrent.Flow.Subscription.
+ * @author Matthew Dryden
+ *
+ */
+public interface EventSubscription {
+	/***
+	 * Asks for up to n more events. Demand adds up, and Long.MAX_VALUE means no limit.
+	 * @param n the number of events to add to the demand, at least 1
+	 */
+	public void request(long n);
+	/***
+	 * Stops delivery. Events already buffered may still be delivered.
+	 */
+	public void cancel();
+	/***
+	 * Returns the number of events that were dropped because this subscriber's buffer was full.
+	 * @return the number of events dropped for this subscriber
+	 */
+	public long getDropped();
+}
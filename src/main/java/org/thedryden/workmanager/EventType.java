@@ -0,0 +1,9 @@
+package org.thedryden.workmanager;
+/***
+ * Enum for the kinds of WorkerEvent a WorkerPool publishes
+ * @author Matthew Dryden
+ *
+ */
+public enum EventType {
+	WORKER_READY, WORKER_STARTED, WORKER_RETRYING, WORKER_FINISHED, POOL_FINISHED, WORKER_SKIPPED
+}
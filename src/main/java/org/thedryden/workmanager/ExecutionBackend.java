@@ -0,0 +1,45 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.Future;
+
+/***
+ * The execution backend is what actually provides the threads that workers run on. WorkerPool decides when a worker is allowed to start, the backend decides where it runs.
+ * By default WorkerPool will create an ExecutorServiceBackend for you, but you can plug in your own with WorkerPool.setExecutionBackend, for instance one from virtualThreads on Java 21 or later.
+ * @author Matthew Dryden
+ *
+ */
+public interface ExecutionBackend {
+	/***
+	 * Submits a task that will run the passed worker. The thread running the task will carry the worker's thread name while the worker runs.
+	 * @param worker the worker that is about to be run
+	 * @param task the task to run, this will call the worker's run method
+	 * @return a future that completes when the task does
+	 */
+	public Future<?> submit( WorkerInterface worker, Runnable task );
+	/***
+	 * Called by WorkerPool whenever its maxThreadCount changes, so the backend can resize itself.
+	 * @param maxThreadCount the new maximum number of threads that can be run at once.
+	 */
+	public void setMaxThreadCount( int maxThreadCount );
+	/***
+	 * Releases any threads held by the backend. Backends that wrap a supplied ExecutorService should leave it running, since they don't own it.
+	 */
+	public void shutdown();
+	/***
+	 * Returns a new VirtualThreadBackend, which runs every worker on its own virtual thread.
+	 * @return a new VirtualThreadBackend
+	 * @throws UnsupportedOperationException thrown if this JVM is older than Java 21, or the jar was built without the Java 21 classes (by a JDK older than 21). Catch it to fall back to an ExecutorServiceBackend.
+	 */
+	public static ExecutionBackend virtualThreads() throws UnsupportedOperationException {
+		String version = System.getProperty("java.specification.version");
+		if(version.startsWith("1.") || Integer.parseInt(version.split("\\.")[0]) < 21)
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later, this JVM is " + System.getProperty("java.version"));
+		try {
+			return (ExecutionBackend) Class.forName("org.thedryden.workmanager.VirtualThreadBackend").getConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			throw new UnsupportedOperationException("This jar was built without VirtualThreadBackend, build it with Java 21 or later to include it", e);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Could not create a VirtualThreadBackend", e);
+		}
+	}
+}
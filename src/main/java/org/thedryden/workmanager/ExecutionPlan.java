@@ -0,0 +1,379 @@
+package org.thedryden.workmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/***
+ * A frozen copy of the graph held by a WorkerPool, created by WorkerPool.compile.
+ * Every worker is given a dense integer id, workers in the same pool have consecutive ids, and precedence constraints are stored as arrays of ids (parents and children of each worker), so nothing that runs a pool ever has to look up a worker by name.
+ * The shape of a plan never changes, the only thing that does is the status of each worker, which is also kept in a primitive array.
+ * The graph is validated once, when the plan is built, in time proportional to the number of workers plus the number of precedence constraints.
+ *
+ * When the WorkerPool is in global DAG mode the plan is one graph across every pool: constraints on workers in other pools are edges, and each pool also gets a stage, with an id at or above size(), that waits on every worker in the pool and is waited on by every worker in the pools that depend on it.
+ * @author Matthew Dryden
+ *
+ */
+public final class ExecutionPlan {
+	private static final Status[] STATUSES = Status.values();
+
+	private final boolean global;
+	private final WorkerInterface[] workers;
+	private final String[] threadNames;
+	//A copy of each worker's precedence constraints, so changes made in place on the worker's own set are spotted too
+	private final List<Set<String>> constraints;
+	private final String[] poolNames;
+	private final int[] poolOffsets;
+	private final int[] poolOf;
+	private final Map<String,Integer> ids;
+	private final Map<String,Integer> poolIds;
+	private final Csr parents;
+	private final Csr children;
+	private final AtomicIntegerArray status;
+	private int[] topologicalOrder;
+	private final List<String[]> unresolvedConstraints;
+
+	ExecutionPlan(List<String> poolOrder, Map<String,List<WorkerInterface>> pools) throws DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		this(poolOrder, pools, null);
+	}
+
+	/*
+	 * Passing poolDependencies (even an empty map) builds a global plan, passing null builds a plan where each pool only ever waits on itself.
+	 */
+	ExecutionPlan(List<String> poolOrder, Map<String,List<WorkerInterface>> pools, Map<String,Set<String>> poolDependencies) throws DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		global = poolDependencies != null;
+		//Pools in poolOrder come first, so ids follow the order pools were added in. Pools that already ran (and so are no longer in poolOrder) go last.
+		Set<String> allPools = new LinkedHashSet<>();
+		for(String aKey : poolOrder)
+			if(pools.containsKey(aKey))
+				allPools.add(aKey);
+		allPools.addAll(pools.keySet());
+
+		int size = 0;
+		for(String aKey : allPools)
+			size += pools.get(aKey).size();
+		poolNames = allPools.toArray(new String[allPools.size()]);
+		int nodes = size + (global ? poolNames.length : 0);
+		workers = new WorkerInterface[size];
+		threadNames = new String[nodes];
+		constraints = new ArrayList<>(size);
+		poolOffsets = new int[poolNames.length + 1];
+		poolOf = new int[nodes];
+		ids = new HashMap<>(size * 2);
+		poolIds = new HashMap<>(poolNames.length * 2);
+
+		Set<String> dups = new LinkedHashSet<>();
+		int id = 0;
+		for(int p = 0; p < poolNames.length; p++) {
+			poolIds.put(poolNames[p], p);
+			poolOffsets[p] = id;
+			for(WorkerInterface aWorker : pools.get(poolNames[p])) {
+				if(ids.put(aWorker.getThreadName(), id) != null)
+					dups.add(aWorker.getThreadName());
+				workers[id] = aWorker;
+				threadNames[id] = aWorker.getThreadName();
+				constraints.add(copyConstraints(aWorker.getPrecedenceConstraint()));
+				poolOf[id] = p;
+				id++;
+			}
+		}
+		poolOffsets[poolNames.length] = id;
+		if(global) {
+			for(int p = 0; p < poolNames.length; p++) {
+				threadNames[size + p] = "Pool " + poolNames[p];
+				poolOf[size + p] = p;
+			}
+		}
+
+		if(dups.size() > 0) {
+			StringBuilder output = new StringBuilder("Thread names must be globally unique both within and accross pools. The following thread name(s) appears more than once: ");
+			First first = new First();
+			for(String aName : dups) {
+				if(!first.first())
+					output.append(", ");
+				output.append(aName);
+			}
+			throw new DuplicateThreadNameException(output.toString());
+		}
+
+		//Unless this is a global plan only constraints on workers in the same pool are edges, a pool only ever waits on itself
+		Csr.Builder edges = new Csr.Builder(nodes);
+		List<String[]> unresolved = new ArrayList<>();
+		for(int child = 0; child < size; child++) {
+			Set<String> pc = workers[child].getPrecedenceConstraint();
+			if(pc == null)
+				continue;
+			for(String aConstraint : pc) {
+				Integer parent = ids.get(aConstraint);
+				if(parent != null && (global || poolOf[parent] == poolOf[child]))
+					edges.add(parent, child);
+				else
+					unresolved.add(new String[] {threadNames[child], poolNames[poolOf[child]], aConstraint, parent == null ? null : poolNames[poolOf[parent]]});
+			}
+		}
+		if(global) {
+			//A pool's stage waits on all of its workers, but only if some other pool depends on it
+			boolean[] staged = new boolean[poolNames.length];
+			for(Map.Entry<String,Set<String>> aDependency : poolDependencies.entrySet()) {
+				Integer child = poolIds.get(aDependency.getKey());
+				if(child == null)
+					continue;
+				for(String aParent : aDependency.getValue()) {
+					Integer parent = poolIds.get(aParent);
+					if(parent == null)
+						continue;
+					if(!staged[parent]) {
+						staged[parent] = true;
+						for(int w = poolOffsets[parent]; w < poolOffsets[parent + 1]; w++)
+							edges.add(w, size + parent);
+					}
+					for(int w = poolOffsets[child]; w < poolOffsets[child + 1]; w++)
+						edges.add(size + parent, w);
+				}
+			}
+		}
+		children = edges.build();
+		parents = edges.buildReverse();
+		unresolvedConstraints = Collections.unmodifiableList(unresolved);
+		checkForLoop();
+
+		status = new AtomicIntegerArray(nodes);
+		for(int i = 0; i < nodes; i++)
+			status.set(i, i < size ? toStatus(workers[i].getStatus()).ordinal() : Status.PENDING.ordinal());
+	}
+
+	/***
+	 * Returns the number of workers in the plan. In a global plan, pool stages have the ids from size() up.
+	 * @return the number of workers in the plan.
+	 */
+	public int size() {
+		return workers.length;
+	}
+	/***
+	 * Returns true if this plan was compiled as one global graph across every pool.
+	 * @return true if this plan was compiled as one global graph across every pool.
+	 */
+	public boolean isGlobal() {
+		return global;
+	}
+	/***
+	 * Returns the id of the worker with the passed thread name, or -1 if there is no such worker.
+	 * @param threadName the thread name to look up
+	 * @return the id of the worker, or -1 if there is no such worker.
+	 */
+	public int getId(String threadName) {
+		Integer id = ids.get(threadName);
+		return id == null ? -1 : id;
+	}
+	/***
+	 * Returns the worker with the passed id, or null if the id belongs to a pool stage.
+	 * @param id the id of a worker in this plan
+	 * @return the worker with the passed id.
+	 */
+	public WorkerInterface getWorker(int id) {
+		return id < workers.length ? workers[id] : null;
+	}
+	/***
+	 * Returns the thread name of the worker with the passed id, or "Pool " followed by the pool name for a pool stage.
+	 * @param id the id of a worker or pool stage in this plan
+	 * @return the name of the worker or pool stage.
+	 */
+	public String getName(int id) {
+		return threadNames[id];
+	}
+	/***
+	 * Returns the name of the pool the worker with the passed id belongs to.
+	 * @param id the id of a worker in this plan
+	 * @return the name of the pool the worker belongs to.
+	 */
+	public String getPoolName(int id) {
+		return poolNames[poolOf[id]];
+	}
+	/***
+	 * Returns the ids of the workers the passed worker waits on.
+	 * @param id the id of a worker in this plan
+	 * @return a copy of the ids of the workers the passed worker waits on.
+	 */
+	public int[] getParents(int id) {
+		return parents.copyRow(id);
+	}
+	/***
+	 * Returns the ids of the workers that wait on the passed worker.
+	 * @param id the id of a worker in this plan
+	 * @return a copy of the ids of the workers that wait on the passed worker.
+	 */
+	public int[] getChildren(int id) {
+		return children.copyRow(id);
+	}
+	/***
+	 * Returns the status of the worker with the passed id, as last seen by the WorkerPool.
+	 * @param id the id of a worker in this plan
+	 * @return the status of the worker.
+	 */
+	public Status getStatus(int id) {
+		return STATUSES[status.get(id)];
+	}
+	/***
+	 * Returns the precedence constraints that did not name a worker in the same pool (or for a global plan, did not name a worker at all), and so are ignored.
+	 * Each entry holds, in order: the thread name of the worker with the constraint, its pool, the name in the constraint, and the pool of the worker that name belongs to (null if there is no worker with that name).
+	 * @return the precedence constraints that are ignored.
+	 */
+	public List<String[]> getUnresolvedConstraints() {
+		return unresolvedConstraints;
+	}
+
+	/*
+	 * Checks that the passed pools (or all of them if none are passed) still hold the same workers, with the same names and precedence constraints, as when this was compiled.
+	 * Takes time proportional to the number of workers and constraints checked, and checking only the pools about to run keeps starting N pools one at a time linear overall.
+	 */
+	boolean isCurrent(Map<String,List<WorkerInterface>> pools, String ...toCheck) {
+		if(pools.size() != poolNames.length)
+			return false;
+		int checks = toCheck.length == 0 ? poolNames.length : toCheck.length;
+		for(int c = 0; c < checks; c++) {
+			int p = toCheck.length == 0 ? c : getPoolId(toCheck[c]);
+			if(p < 0)
+				return false;
+			List<WorkerInterface> pool = pools.get(poolNames[p]);
+			if(pool == null || pool.size() != poolOffsets[p + 1] - poolOffsets[p])
+				return false;
+			int id = poolOffsets[p];
+			for(WorkerInterface aWorker : pool) {
+				if(aWorker != workers[id] || !Objects.equals(threadNames[id], aWorker.getThreadName()))
+					return false;
+				Set<String> current = aWorker.getPrecedenceConstraint();
+				if(current == null ? !constraints.get(id).isEmpty() : !constraints.get(id).equals(current))
+					return false;
+				id++;
+			}
+		}
+		return true;
+	}
+
+	private static Set<String> copyConstraints(Set<String> constraint) {
+		if(constraint == null || constraint.isEmpty())
+			return Collections.emptySet();
+		return new HashSet<>(constraint);
+	}
+
+	void setStatus(int id, Status aStatus) {
+		status.set(id, aStatus.ordinal());
+	}
+
+	//Copies the worker's own status into the plan, and returns it. Pool stages are simply reset to pending.
+	Status syncStatus(int id) {
+		Status aStatus = id < workers.length ? toStatus(workers[id].getStatus()) : Status.PENDING;
+		status.set(id, aStatus.ordinal());
+		return aStatus;
+	}
+
+	int nodeCount() {
+		return threadNames.length;
+	}
+
+	boolean isStage(int id) {
+		return id >= workers.length;
+	}
+
+	int getStage(int poolId) {
+		return workers.length + poolId;
+	}
+
+	int getPoolId(String poolName) {
+		Integer p = poolIds.get(poolName);
+		return p == null ? -1 : p;
+	}
+
+	int getPoolIndex(int id) {
+		return poolOf[id];
+	}
+
+	String getPoolNameAt(int poolId) {
+		return poolNames[poolId];
+	}
+
+	int getPoolCount() {
+		return poolNames.length;
+	}
+
+	int getPoolStart(int poolId) {
+		return poolOffsets[poolId];
+	}
+
+	int getPoolEnd(int poolId) {
+		return poolOffsets[poolId + 1];
+	}
+
+	//Every worker and pool stage, parents always before children
+	int[] topologicalOrder() {
+		return topologicalOrder;
+	}
+
+	Csr parents() {
+		return parents;
+	}
+
+	Csr children() {
+		return children;
+	}
+
+	/*
+	 * Kahn's algorithm: repeatedly remove workers with no remaining parents. Anything left over is on, or downstream of, a loop.
+	 * To report the loop, start from any leftover worker and keep stepping to one of its leftover parents until a worker repeats.
+	 */
+	private void checkForLoop() throws CircularPrecedenceConstraintException {
+		int size = threadNames.length;
+		int[] remaining = new int[size];
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		for(int id = 0; id < size; id++) {
+			remaining[id] = parents.degree(id);
+			if(remaining[id] == 0)
+				queue[tail++] = id;
+		}
+		while(head < tail) {
+			int id = queue[head++];
+			for(int e = children.offsets[id]; e < children.offsets[id + 1]; e++)
+				if(--remaining[children.targets[e]] == 0)
+					queue[tail++] = children.targets[e];
+		}
+		if(tail == size) {
+			topologicalOrder = queue;
+			return;
+		}
+
+		int startId = 0;
+		while(remaining[startId] == 0)
+			startId++;
+		int[] seenAt = new int[size];
+		List<Integer> path = new ArrayList<>();
+		int current = startId;
+		while(seenAt[current] == 0) {
+			path.add(current);
+			seenAt[current] = path.size();
+			for(int e = parents.offsets[current]; e < parents.offsets[current + 1]; e++) {
+				if(remaining[parents.targets[e]] > 0) {
+					current = parents.targets[e];
+					break;
+				}
+			}
+		}
+		StringBuilder output = new StringBuilder("The precedence constraints of the following workers form a loop, which is unresolveable: ");
+		for(int i = seenAt[current] - 1; i < path.size(); i++)
+			output.append(threadNames[path.get(i)]).append(" waits on ");
+		output.append(threadNames[current]);
+		throw new CircularPrecedenceConstraintException(output.toString());
+	}
+
+	private static Status toStatus(Status aStatus) {
+		return aStatus == null ? Status.EMPTY : aStatus;
+	}
+}
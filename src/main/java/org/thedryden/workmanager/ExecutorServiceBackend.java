@@ -0,0 +1,98 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Default ExecutionBackend. Runs workers on an ExecutorService so threads are reused across workers, pools, pool retries and repeated calls to start.
+ * If no ExecutorService is supplied a bounded one is created, with maxThreadCount as its bound. Threads in the built-in executor are daemon threads and are released after they have been idle for KEEP_ALIVE_SECONDS.
+ * @author Matthew Dryden
+ *
+ */
+public class ExecutorServiceBackend implements ExecutionBackend {
+	/***
+	 * Number of seconds an idle thread in the built-in executor is kept before it is released.
+	 */
+	public static final long KEEP_ALIVE_SECONDS = 60;
+
+	protected ExecutorService executor;
+	protected boolean owned;
+
+	/***
+	 * Creates a backend with a built-in executor bound to WorkerPool.DEFAULT_MAX_THREAD_COUNT threads.
+	 */
+	public ExecutorServiceBackend() {
+		this(WorkerPool.DEFAULT_MAX_THREAD_COUNT);
+	}
+	/***
+	 * Creates a backend with a built-in executor bound to the passed number of threads.
+	 * @param maxThreadCount the maximum number of threads the built-in executor will create.
+	 */
+	public ExecutorServiceBackend(int maxThreadCount) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreadCount, maxThreadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+		this.owned = true;
+	}
+	/***
+	 * Creates a backend that runs workers on the passed executor. The executor is owned by the caller, so it will not be resized or shutdown by this backend.
+	 * @param executor the executor you wish workers to run on.
+	 */
+	public ExecutorServiceBackend(ExecutorService executor) {
+		if(executor == null)
+			throw new IllegalArgumentException("executor can't be null");
+		this.executor = executor;
+		this.owned = false;
+	}
+
+	@Override
+	public Future<?> submit(WorkerInterface worker, Runnable task) {
+		return executor.submit(task);
+	}
+
+	@Override
+	public void setMaxThreadCount(int maxThreadCount) {
+		if(!owned || maxThreadCount < 1)
+			return;
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+		//Order matters, core size can never be larger than maximum size
+		if(maxThreadCount > pool.getMaximumPoolSize()) {
+			pool.setMaximumPoolSize(maxThreadCount);
+			pool.setCorePoolSize(maxThreadCount);
+		} else {
+			pool.setCorePoolSize(maxThreadCount);
+			pool.setMaximumPoolSize(maxThreadCount);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		if(owned)
+			executor.shutdown();
+	}
+	/***
+	 * Returns the executor workers are run on.
+	 * @return the executor workers are run on.
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String prefix = "workmanager-" + POOL_NUMBER.getAndIncrement() + "-thread-";
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread aThread = new Thread(r, prefix + threadNumber.getAndIncrement());
+			aThread.setDaemon(true);
+			return aThread;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.thedryden.workmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/***
+ * Builds an input fingerprint for WorkerInterface.getInputFingerprint: a SHA-256 hash over whatever a worker reads, such as the files it loads and the parameters it was given.
+ * Each value is hashed along with its length, so "ab" then "c" never has the same fingerprint as "a" then "bc".
+ * <pre>
+ * public String getInputFingerprint() throws IOException {
+ * 	return new Fingerprint().add(runDate).addFile("/data/in/customers.csv").toString();
+ * }
+ * </pre>
+ * @author Matthew Dryden
+ *
+ */
+public class Fingerprint {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private final MessageDigest digest;
+
+	/***
+	 * Creates an empty fingerprint.
+	 */
+	public Fingerprint() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	/***
+	 * Returns the fingerprint of the passed values.
+	 * @param values the values to hash, in order
+	 * @return the fingerprint as a hex string
+	 */
+	public static String of(String ...values) {
+		Fingerprint output = new Fingerprint();
+		for(String aValue : values)
+			output.add(aValue);
+		return output.toString();
+	}
+	/***
+	 * Adds a value, such as a parameter. null is different from every string, including the empty one.
+	 * @param value the value to add
+	 * @return this - for method chaining
+	 */
+	public Fingerprint add(String value) {
+		if(value == null)
+			return add(-1L);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		add((long) bytes.length);
+		digest.update(bytes);
+		return this;
+	}
+	/***
+	 * Adds a number, such as a parameter or a timestamp.
+	 * @param value the value to add
+	 * @return this - for method chaining
+	 */
+	public Fingerprint add(long value) {
+		for(int shift = 56; shift >= 0; shift -= 8)
+			digest.update((byte) (value >>> shift));
+		return this;
+	}
+	/***
+	 * Adds the contents of a file. A file that doesn't exist is added as missing, so creating it changes the fingerprint.
+	 * @param file the file to add
+	 * @return this - for method chaining
+	 * @throws IOException thrown if the file exists but can't be read
+	 */
+	public Fingerprint addFile(Path file) throws IOException {
+		add(file.toString());
+		if(!Files.exists(file))
+			return add(-1L);
+		add(Files.size(file));
+		byte[] buffer = new byte[8192];
+		try(InputStream in = Files.newInputStream(file)) {
+			int read;
+			while((read = in.read(buffer)) > 0)
+				digest.update(buffer, 0, read);
+		}
+		return this;
+	}
+	/***
+	 * Adds the contents of a file, see addFile(Path).
+	 * @param file the path of the file to add
+	 * @return this - for method chaining
+	 * @throws IOException thrown if the file exists but can't be read
+	 */
+	public Fingerprint addFile(String file) throws IOException {
+		return addFile(Paths.get(file));
+	}
+	/***
+	 * Returns the fingerprint of everything added so far as a hex string, and starts over, as if nothing had been added.
+	 */
+	@Override
+	public String toString() {
+		byte[] hash = digest.digest();
+		char[] output = new char[hash.length * 2];
+		for(int i = 0; i < hash.length; i++) {
+			output[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+			output[i * 2 + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(output);
+	}
+}
@@ -0,0 +1,120 @@
+package org.thedryden.workmanager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * Remembers, on disk, the input fingerprint each worker had the last time it succeeded, see WorkerPool.setFingerprintStore. A worker whose fingerprint still matches is up to date and is skipped.
+ * The file is a line per worker, the fingerprint then a tab then the thread name. It is read once, when the store is created, and written whole by save, to a temporary file that then replaces it, so a crash mid save never leaves half a file.
+ * @author Matthew Dryden
+ *
+ */
+public class FingerprintStore {
+	private final Path path;
+	private final Map<String,String> fingerprints;
+	private volatile boolean changed;
+
+	/***
+	 * Creates a store kept in the passed file, reading it if it exists.
+	 * @param path the file to keep fingerprints in
+	 * @throws IOException thrown if the file exists but can't be read
+	 */
+	public FingerprintStore(Path path) throws IOException {
+		this.path = path;
+		this.fingerprints = new ConcurrentHashMap<>();
+		this.changed = false;
+		if(Files.exists(path)) {
+			try(BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				String aLine;
+				while((aLine = in.readLine()) != null) {
+					int tab = aLine.indexOf('\t');
+					if(tab > 0)
+						fingerprints.put(aLine.substring(tab + 1), aLine.substring(0, tab));
+				}
+			}
+		}
+	}
+	/***
+	 * Creates a store kept in the passed file, reading it if it exists.
+	 * @param path the path of the file to keep fingerprints in
+	 * @throws IOException thrown if the file exists but can't be read
+	 */
+	public FingerprintStore(String path) throws IOException {
+		this(Paths.get(path));
+	}
+	/***
+	 * Returns the file fingerprints are kept in.
+	 * @return the file fingerprints are kept in
+	 */
+	public Path getPath() {
+		return path;
+	}
+	/***
+	 * Returns the input fingerprint the passed worker had the last time it succeeded, or null if there is none.
+	 * @param threadName the thread name of the worker
+	 * @return the fingerprint, or null
+	 */
+	public String get(String threadName) {
+		return fingerprints.get(threadName);
+	}
+	/***
+	 * Records the input fingerprint of a worker that succeeded.
+	 * @param threadName the thread name of the worker
+	 * @param fingerprint its input fingerprint
+	 */
+	public void put(String threadName, String fingerprint) {
+		if(!fingerprint.equals(fingerprints.put(threadName, fingerprint)))
+			changed = true;
+	}
+	/***
+	 * Forgets the passed worker, so it runs next time whatever its fingerprint.
+	 * @param threadName the thread name of the worker
+	 */
+	public void remove(String threadName) {
+		if(fingerprints.remove(threadName) != null)
+			changed = true;
+	}
+	/***
+	 * Forgets every worker, so everything runs next time.
+	 */
+	public void clear() {
+		fingerprints.clear();
+		changed = true;
+	}
+	/***
+	 * Writes the store to its file, if anything changed since it was read or last saved.
+	 * @throws IOException thrown if the file can't be written
+	 */
+	public synchronized void save() throws IOException {
+		if(!changed)
+			return;
+		changed = false;
+		Path absolute = path.toAbsolutePath();
+		if(absolute.getParent() != null)
+			Files.createDirectories(absolute.getParent());
+		Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try(BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for(Map.Entry<String,String> anEntry : fingerprints.entrySet()) {
+					out.write(anEntry.getValue());
+					out.write('\t');
+					out.write(anEntry.getKey());
+					out.newLine();
+				}
+			}
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			changed = true;
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+}
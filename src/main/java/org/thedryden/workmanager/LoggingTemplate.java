@@ -34,6 +34,34 @@ public class LoggingTemplate {
 	protected static Level poolExitOnErrorLevel = Level.error;
 	protected static String retry = "{} {} failed, but its has been set to retry {} times. Starting retry {} after waiting {} seconds.";
 	protected static Level retryLevel = Level.warn;
+	protected static String constraintMissing = "Worker {} has a precedence constraint on {}, but there is no worker with that name. The constraint will be ignored.";
+	protected static Level constraintMissingLevel = Level.warn;
+	protected static String constraintOtherPool = "Worker {} in pool {} has a precedence constraint on {}, which is in pool {}. Workers only wait on workers in their own pool, so the constraint will be ignored.";
+	protected static Level constraintOtherPoolLevel = Level.debug;
+	protected static String poolCancelRunningOnError = "Since cancel running on failure is set to true, and at least one thread in the pool {} has failed, {} running worker(s) in the pool are being cancelled.";
+	protected static Level poolCancelRunningOnErrorLevel = Level.warn;
+	protected static String workerSpawn = "Worker {} spawned worker {}";
+	protected static Level workerSpawnLevel = Level.debug;
+	protected static String concurrencyAdjusted = "Adjusted the number of workers that can run at once from {} to {}. Workers completed per second: {}, time taken against expected: {}";
+	protected static Level concurrencyAdjustedLevel = Level.info;
+	protected static String retryBudgetExhausted = "{} {} failed and could retry, but the retry budget is used up, so it will not be retried.";
+	protected static Level retryBudgetExhaustedLevel = Level.warn;
+	protected static String workerTimedOut = "Worker {} did not finish within its timeout of {} milliseconds, so it is being cancelled.";
+	protected static Level workerTimedOutLevel = Level.warn;
+	protected static String workerStillRunning = "Worker {} is not being run again, the attempt that timed out is still running on its thread, so it stays TIMED_OUT.";
+	protected static Level workerStillRunningLevel = Level.warn;
+	protected static String poolTimedOut = "Pool {} did not finish within its timeout of {} milliseconds, so it will not start any more threads and {} running worker(s) in the pool are being cancelled.";
+	protected static Level poolTimedOutLevel = Level.warn;
+	protected static String workerUpToDate = "Worker {} is up to date, its inputs have not changed since it last succeeded, so it will be skipped.";
+	protected static Level workerUpToDateLevel = Level.info;
+	protected static String fingerprintSaveFailed = "Could not save input fingerprints to {}, workers that succeeded this run will run again next time. {}";
+	protected static Level fingerprintSaveFailedLevel = Level.warn;
+	protected static String journalFailed = "Could not write the status journal {}, a resume will start from before this point. {}";
+	protected static Level journalFailedLevel = Level.warn;
+	protected static String agentRegistered = "Agent {} registered with {} slot(s).";
+	protected static Level agentRegisteredLevel = Level.info;
+	protected static String agentLost = "Lost agent {}, the {} worker(s) it was running will be given to another agent.";
+	protected static Level agentLostLevel = Level.warn;
 	private static Function<Timer,String> timerToString = t -> {
 		return t.toFancyString();
 	};
@@ -395,7 +423,7 @@ public class LoggingTemplate {
 		return retry;
 	}
 	/***
-	 * Used to override the default message that will display when either a worker or pool retries after a failure. Takes 5 parameters: 1) If this is a worker or pool, 2) the threadName of the worker or name of the pool 3) the number value of retryAttempts, 4) the current retry number, 5) the value of retryWaitSeconds.
+	 * Used to override the default message that will display when either a worker or pool retries after a failure. Takes 5 parameters: 1) If this is a worker or pool, 2) the threadName of the worker or name of the pool 3) the number value of retryAttempts, 4) the current retry number, 5) the number of seconds waited before the retry, from the retry policy.
 	 * @param retry the new message that will display when either a worker or pool retries after a failure.
 	 */
 	public static void setRetry(String retry) {
@@ -415,6 +443,398 @@ public class LoggingTemplate {
 	public static void setRetryLevel(Level retryLevel) {
 		LoggingTemplate.retryLevel = retryLevel;
 	}
+	/***
+	 * Returns the current message that will display when a precedence constraint names a worker that doesn't exist.
+	 * @return the current message that will display when a precedence constraint names a worker that doesn't exist.
+	 */
+	public static String getConstraintMissing() {
+		return constraintMissing;
+	}
+	/***
+	 * Used to override the default message that will display when a precedence constraint names a worker that doesn't exist. Takes 2 parameters: 1) the threadName of the worker with the constraint, 2) the name in the constraint.
+	 * @param constraintMissing the new message that will display when a precedence constraint names a worker that doesn't exist.
+	 */
+	public static void setConstraintMissing(String constraintMissing) {
+		LoggingTemplate.constraintMissing = constraintMissing;
+	}
+	/***
+	 * Returns the logging level for when a precedence constraint names a worker that doesn't exist.
+	 * @return the logging level for when a precedence constraint names a worker that doesn't exist.
+	 */
+	public static Level getConstraintMissingLevel() {
+		return constraintMissingLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a precedence constraint names a worker that doesn't exist.
+	 * @param constraintMissingLevel the new logging level when a precedence constraint names a worker that doesn't exist.
+	 */
+	public static void setConstraintMissingLevel(Level constraintMissingLevel) {
+		LoggingTemplate.constraintMissingLevel = constraintMissingLevel;
+	}
+	/***
+	 * Returns the current message that will display when a precedence constraint names a worker in another pool.
+	 * @return the current message that will display when a precedence constraint names a worker in another pool.
+	 */
+	public static String getConstraintOtherPool() {
+		return constraintOtherPool;
+	}
+	/***
+	 * Used to override the default message that will display when a precedence constraint names a worker in another pool. Takes 4 parameters: 1) the threadName of the worker with the constraint, 2) its pool, 3) the name in the constraint, 4) the pool that worker is in.
+	 * @param constraintOtherPool the new message that will display when a precedence constraint names a worker in another pool.
+	 */
+	public static void setConstraintOtherPool(String constraintOtherPool) {
+		LoggingTemplate.constraintOtherPool = constraintOtherPool;
+	}
+	/***
+	 * Returns the logging level for when a precedence constraint names a worker in another pool.
+	 * @return the logging level for when a precedence constraint names a worker in another pool.
+	 */
+	public static Level getConstraintOtherPoolLevel() {
+		return constraintOtherPoolLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a precedence constraint names a worker in another pool.
+	 * @param constraintOtherPoolLevel the new logging level when a precedence constraint names a worker in another pool.
+	 */
+	public static void setConstraintOtherPoolLevel(Level constraintOtherPoolLevel) {
+		LoggingTemplate.constraintOtherPoolLevel = constraintOtherPoolLevel;
+	}
+	/***
+	 * Returns the current message that will display when a failure in the pool cancels the workers still running in it.
+	 * @return the current message that will display when a failure in the pool cancels the workers still running in it.
+	 */
+	public static String getPoolCancelRunningOnError() {
+		return poolCancelRunningOnError;
+	}
+	/***
+	 * Used to override the default message that will display when a failure in the pool cancels the workers still running in it. Takes 2 parameters: 1) the pool name, 2) the number of workers being cancelled.
+	 * @param poolCancelRunningOnError the new message that will display when a failure in the pool cancels the workers still running in it.
+	 */
+	public static void setPoolCancelRunningOnError(String poolCancelRunningOnError) {
+		LoggingTemplate.poolCancelRunningOnError = poolCancelRunningOnError;
+	}
+	/***
+	 * Returns the logging level for when a failure in the pool cancels the workers still running in it.
+	 * @return the logging level for when a failure in the pool cancels the workers still running in it.
+	 */
+	public static Level getPoolCancelRunningOnErrorLevel() {
+		return poolCancelRunningOnErrorLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a failure in the pool cancels the workers still running in it.
+	 * @param poolCancelRunningOnErrorLevel the new logging level when a failure in the pool cancels the workers still running in it.
+	 */
+	public static void setPoolCancelRunningOnErrorLevel(Level poolCancelRunningOnErrorLevel) {
+		LoggingTemplate.poolCancelRunningOnErrorLevel = poolCancelRunningOnErrorLevel;
+	}
+	/***
+	 * Returns the current message that will display when a running worker spawns a new worker.
+	 * @return the current message that will display when a running worker spawns a new worker.
+	 */
+	public static String getWorkerSpawn() {
+		return workerSpawn;
+	}
+	/***
+	 * Used to override the default message that will display when a running worker spawns a new worker. Takes 2 parameters: 1) the threadName of the spawning worker, 2) the threadName of the new worker.
+	 * @param workerSpawn the new message that will display when a running worker spawns a new worker.
+	 */
+	public static void setWorkerSpawn(String workerSpawn) {
+		LoggingTemplate.workerSpawn = workerSpawn;
+	}
+	/***
+	 * Returns the logging level for when a running worker spawns a new worker.
+	 * @return the logging level for when a running worker spawns a new worker.
+	 */
+	public static Level getWorkerSpawnLevel() {
+		return workerSpawnLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a running worker spawns a new worker.
+	 * @param workerSpawnLevel the new logging level when a running worker spawns a new worker.
+	 */
+	public static void setWorkerSpawnLevel(Level workerSpawnLevel) {
+		LoggingTemplate.workerSpawnLevel = workerSpawnLevel;
+	}
+	/***
+	 * Returns the current message that will display when adaptive concurrency changes the number of workers that can run at once.
+	 * @return the current message that will display when adaptive concurrency changes the number of workers that can run at once.
+	 */
+	public static String getConcurrencyAdjusted() {
+		return concurrencyAdjusted;
+	}
+	/***
+	 * Used to override the default message that will display when adaptive concurrency changes the number of workers that can run at once. Takes 4 parameters: 1) the old limit, 2) the new limit, 3) workers completed per second, 4) the average time taken against the expected time.
+	 * @param concurrencyAdjusted the new message that will display when adaptive concurrency changes the number of workers that can run at once.
+	 */
+	public static void setConcurrencyAdjusted(String concurrencyAdjusted) {
+		LoggingTemplate.concurrencyAdjusted = concurrencyAdjusted;
+	}
+	/***
+	 * Returns the logging level for when adaptive concurrency changes the number of workers that can run at once.
+	 * @return the logging level for when adaptive concurrency changes the number of workers that can run at once.
+	 */
+	public static Level getConcurrencyAdjustedLevel() {
+		return concurrencyAdjustedLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when adaptive concurrency changes the number of workers that can run at once.
+	 * @param concurrencyAdjustedLevel the new logging level when adaptive concurrency changes the number of workers that can run at once.
+	 */
+	public static void setConcurrencyAdjustedLevel(Level concurrencyAdjustedLevel) {
+		LoggingTemplate.concurrencyAdjustedLevel = concurrencyAdjustedLevel;
+	}
+	/***
+	 * Returns the current message that will display when a worker could retry but the WorkerPool's retry budget is used up.
+	 * @return the current message that will display when a worker could retry but the retry budget is used up.
+	 */
+	public static String getRetryBudgetExhausted() {
+		return retryBudgetExhausted;
+	}
+	/***
+	 * Used to override the default message that will display when a worker could retry but the WorkerPool's retry budget is used up. Takes 2 parameters: 1) If this is a worker or pool, 2) the threadName of the worker or name of the pool.
+	 * @param retryBudgetExhausted the new message that will display when a worker could retry but the retry budget is used up.
+	 */
+	public static void setRetryBudgetExhausted(String retryBudgetExhausted) {
+		LoggingTemplate.retryBudgetExhausted = retryBudgetExhausted;
+	}
+	/***
+	 * Returns the logging level for when a worker could retry but the retry budget is used up.
+	 * @return the logging level for when a worker could retry but the retry budget is used up.
+	 */
+	public static Level getRetryBudgetExhaustedLevel() {
+		return retryBudgetExhaustedLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a worker could retry but the retry budget is used up.
+	 * @param retryBudgetExhaustedLevel the new logging level when a worker could retry but the retry budget is used up.
+	 */
+	public static void setRetryBudgetExhaustedLevel(Level retryBudgetExhaustedLevel) {
+		LoggingTemplate.retryBudgetExhaustedLevel = retryBudgetExhaustedLevel;
+	}
+	/***
+	 * Returns the current message that will display when a worker runs past its timeout.
+	 * @return the current message that will display when a worker runs past its timeout.
+	 */
+	public static String getWorkerTimedOut() {
+		return workerTimedOut;
+	}
+	/***
+	 * Used to override the default message that will display when a worker runs past its timeout. Takes 2 parameters: 1) the threadName of the worker, 2) the timeout in milliseconds.
+	 * @param workerTimedOut the new message that will display when a worker runs past its timeout.
+	 */
+	public static void setWorkerTimedOut(String workerTimedOut) {
+		LoggingTemplate.workerTimedOut = workerTimedOut;
+	}
+	/***
+	 * Returns the logging level for when a worker runs past its timeout.
+	 * @return the logging level for when a worker runs past its timeout.
+	 */
+	public static Level getWorkerTimedOutLevel() {
+		return workerTimedOutLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a worker runs past its timeout.
+	 * @param workerTimedOutLevel the new logging level when a worker runs past its timeout.
+	 */
+	public static void setWorkerTimedOutLevel(Level workerTimedOutLevel) {
+		LoggingTemplate.workerTimedOutLevel = workerTimedOutLevel;
+	}
+	/***
+	 * Returns the current message that will display when a worker is not run again because its timed out attempt is still running.
+	 * @return the current message that will display when a worker is not run again because its timed out attempt is still running.
+	 */
+	public static String getWorkerStillRunning() {
+		return workerStillRunning;
+	}
+	/***
+	 * Used to override the default message that will display when a worker is not run again because its timed out attempt is still running. Takes 1 parameter, the threadName of the worker.
+	 * @param workerStillRunning the new message that will display when a worker is not run again because its timed out attempt is still running.
+	 */
+	public static void setWorkerStillRunning(String workerStillRunning) {
+		LoggingTemplate.workerStillRunning = workerStillRunning;
+	}
+	/***
+	 * Returns the logging level for when a worker is not run again because its timed out attempt is still running.
+	 * @return the logging level for when a worker is not run again because its timed out attempt is still running.
+	 */
+	public static Level getWorkerStillRunningLevel() {
+		return workerStillRunningLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a worker is not run again because its timed out attempt is still running.
+	 * @param workerStillRunningLevel the new logging level when a worker is not run again because its timed out attempt is still running.
+	 */
+	public static void setWorkerStillRunningLevel(Level workerStillRunningLevel) {
+		LoggingTemplate.workerStillRunningLevel = workerStillRunningLevel;
+	}
+	/***
+	 * Returns the current message that will display when a pool runs past its timeout.
+	 * @return the current message that will display when a pool runs past its timeout.
+	 */
+	public static String getPoolTimedOut() {
+		return poolTimedOut;
+	}
+	/***
+	 * Used to override the default message that will display when a pool runs past its timeout. Takes 3 parameters: 1) the name of the pool, 2) the timeout in milliseconds, 3) the number of running workers being cancelled.
+	 * @param poolTimedOut the new message that will display when a pool runs past its timeout.
+	 */
+	public static void setPoolTimedOut(String poolTimedOut) {
+		LoggingTemplate.poolTimedOut = poolTimedOut;
+	}
+	/***
+	 * Returns the logging level for when a pool runs past its timeout.
+	 * @return the logging level for when a pool runs past its timeout.
+	 */
+	public static Level getPoolTimedOutLevel() {
+		return poolTimedOutLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a pool runs past its timeout.
+	 * @param poolTimedOutLevel the new logging level when a pool runs past its timeout.
+	 */
+	public static void setPoolTimedOutLevel(Level poolTimedOutLevel) {
+		LoggingTemplate.poolTimedOutLevel = poolTimedOutLevel;
+	}
+	/***
+	 * Returns the current message that will display when a worker is skipped because it is up to date.
+	 * @return the current message that will display when a worker is skipped because it is up to date.
+	 */
+	public static String getWorkerUpToDate() {
+		return workerUpToDate;
+	}
+	/***
+	 * Used to override the default message that will display when a worker is skipped because it is up to date. Takes 1 parameter, the threadName of the worker.
+	 * @param workerUpToDate the new message that will display when a worker is skipped because it is up to date.
+	 */
+	public static void setWorkerUpToDate(String workerUpToDate) {
+		LoggingTemplate.workerUpToDate = workerUpToDate;
+	}
+	/***
+	 * Returns the logging level for when a worker is skipped because it is up to date.
+	 * @return the logging level for when a worker is skipped because it is up to date.
+	 */
+	public static Level getWorkerUpToDateLevel() {
+		return workerUpToDateLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a worker is skipped because it is up to date.
+	 * @param workerUpToDateLevel the new logging level when a worker is skipped because it is up to date.
+	 */
+	public static void setWorkerUpToDateLevel(Level workerUpToDateLevel) {
+		LoggingTemplate.workerUpToDateLevel = workerUpToDateLevel;
+	}
+	/***
+	 * Returns the current message that will display when the input fingerprints can't be saved.
+	 * @return the current message that will display when the input fingerprints can't be saved.
+	 */
+	public static String getFingerprintSaveFailed() {
+		return fingerprintSaveFailed;
+	}
+	/***
+	 * Used to override the default message that will display when the input fingerprints can't be saved. Takes 2 parameters: 1) the path of the file, 2) the error.
+	 * @param fingerprintSaveFailed the new message that will display when the input fingerprints can't be saved.
+	 */
+	public static void setFingerprintSaveFailed(String fingerprintSaveFailed) {
+		LoggingTemplate.fingerprintSaveFailed = fingerprintSaveFailed;
+	}
+	/***
+	 * Returns the logging level for when the input fingerprints can't be saved.
+	 * @return the logging level for when the input fingerprints can't be saved.
+	 */
+	public static Level getFingerprintSaveFailedLevel() {
+		return fingerprintSaveFailedLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when the input fingerprints can't be saved.
+	 * @param fingerprintSaveFailedLevel the new logging level when the input fingerprints can't be saved.
+	 */
+	public static void setFingerprintSaveFailedLevel(Level fingerprintSaveFailedLevel) {
+		LoggingTemplate.fingerprintSaveFailedLevel = fingerprintSaveFailedLevel;
+	}
+	/***
+	 * Returns the current message that will display when the status journal can't be written.
+	 * @return the current message that will display when the status journal can't be written.
+	 */
+	public static String getJournalFailed() {
+		return journalFailed;
+	}
+	/***
+	 * Used to override the default message that will display when the status journal can't be written. Takes 2 parameters: 1) the path of the journal, 2) the error.
+	 * @param journalFailed the new message that will display when the status journal can't be written.
+	 */
+	public static void setJournalFailed(String journalFailed) {
+		LoggingTemplate.journalFailed = journalFailed;
+	}
+	/***
+	 * Returns the logging level for when the status journal can't be written.
+	 * @return the logging level for when the status journal can't be written.
+	 */
+	public static Level getJournalFailedLevel() {
+		return journalFailedLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when the status journal can't be written.
+	 * @param journalFailedLevel the new logging level when the status journal can't be written.
+	 */
+	public static void setJournalFailedLevel(Level journalFailedLevel) {
+		LoggingTemplate.journalFailedLevel = journalFailedLevel;
+	}
+	/***
+	 * Returns the current message that will display when an agent registers with a coordinator.
+	 * @return the current message that will display when an agent registers with a coordinator.
+	 */
+	public static String getAgentRegistered() {
+		return agentRegistered;
+	}
+	/***
+	 * Used to override the default message that will display when an agent registers with a coordinator. Takes 2 parameters: 1) the name of the agent, 2) its number of slots.
+	 * @param agentRegistered the new message that will display when an agent registers with a coordinator.
+	 */
+	public static void setAgentRegistered(String agentRegistered) {
+		LoggingTemplate.agentRegistered = agentRegistered;
+	}
+	/***
+	 * Returns the logging level for when an agent registers with a coordinator.
+	 * @return the logging level for when an agent registers with a coordinator.
+	 */
+	public static Level getAgentRegisteredLevel() {
+		return agentRegisteredLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when an agent registers with a coordinator.
+	 * @param agentRegisteredLevel the new logging level when an agent registers with a coordinator.
+	 */
+	public static void setAgentRegisteredLevel(Level agentRegisteredLevel) {
+		LoggingTemplate.agentRegisteredLevel = agentRegisteredLevel;
+	}
+	/***
+	 * Returns the current message that will display when a coordinator loses an agent.
+	 * @return the current message that will display when a coordinator loses an agent.
+	 */
+	public static String getAgentLost() {
+		return agentLost;
+	}
+	/***
+	 * Used to override the default message that will display when a coordinator loses an agent. Takes 2 parameters: 1) the name of the agent, 2) the number of workers given to other agents.
+	 * @param agentLost the new message that will display when a coordinator loses an agent.
+	 */
+	public static void setAgentLost(String agentLost) {
+		LoggingTemplate.agentLost = agentLost;
+	}
+	/***
+	 * Returns the logging level for when a coordinator loses an agent.
+	 * @return the logging level for when a coordinator loses an agent.
+	 */
+	public static Level getAgentLostLevel() {
+		return agentLostLevel;
+	}
+	/***
+	 * Used to overwrite the default logging level when a coordinator loses an agent.
+	 * @param agentLostLevel the new logging level when a coordinator loses an agent.
+	 */
+	public static void setAgentLostLevel(Level agentLostLevel) {
+		LoggingTemplate.agentLostLevel = agentLostLevel;
+	}
 	/***
 	 * Returns the function used to convert a Timer to a string for logging.
 	 * @return the function used to convert a Timer to a string for logging.
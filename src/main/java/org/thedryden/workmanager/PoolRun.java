@@ -0,0 +1,902 @@
+package org.thedryden.workmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/***
+ * A single run of one or more pools. Each worker keeps a count of parents that have not settled yet, when a worker settles it decrements the count of each of its children, and any child that reaches zero goes straight on to the ready queue.
+ * A failure doesn't wait for that count: the first failed parent of a worker settles it as PRECEDENCE_FAILED there and then, along with everything downstream of it, in one pass, even while its other parents are still running.
+ * Nothing here is ever rescanned, so the cost of a run is proportional to the number of workers plus the number of precedence constraints.
+ * Only workers in the pools being run take part, a parent in any other pool is treated as already settled.
+ * A pool retry can run just part of a pool, the workers that didn't succeed last time (see getRerun), and then every other worker is treated as already settled too, so the retry costs time in proportion to what failed rather than to the size of the pool. A Selection runs just part of a pool the same way.
+ * Like a structured scope, a run owns the workers it started: cancel interrupts every one still running, and with cancel running on failure a failed worker cancels the others still running in its pool. Cancelled workers are marked CANCELLED.
+ * A running Worker can spawn new workers into the run. Spawned workers get ids above every id in the plan and live in a side table, and every worker (spawned or not) holds itself open until the workers it spawned are done, so anything waiting on it waits for the whole spawned subtree.
+ * A ready worker whose resource tags are saturated is parked under the saturated tag, rather than holding up the workers behind it, and goes back on the ready queue when a permit for that tag is freed.
+ * When the WorkerPool is set to critical path first, ready workers are started highest rank first, where rank is how long the worker plus the longest chain of work still waiting on it is expected to take.
+ * A Worker waiting to retry gives back its thread, slots and permits, and goes back on the ready queue once its retry policy's wait is over.
+ * A worker that runs past its timeout, or is running when its pool runs past the pool's, is finished as TIMED_OUT straight away: its slots and permits are given back and its children settle, even if its thread carries on until the worker notices it has been cancelled.
+ * With a FingerprintStore, a worker is checked as it becomes ready: if its input fingerprint, combined with those of its parents, is the one it had when it last succeeded, it is marked SUCCESS and settled there and then, without ever taking a slot, and its children are released in the same pass. As each fingerprint takes in its parents', a change anywhere upstream reruns everything downstream of it.
+ * A worker takes as many slots as its weight. A ready worker that doesn't fit in the free slots waits, oldest first, while lighter workers behind it that do fit are started, but once it has been overtaken maxOvertakes times it reserves its slots and nothing else starts until it fits, so a heavy worker is never starved by a stream of light ones.
+ * @author Matthew Dryden
+ *
+ */
+class PoolRun {
+	private final WorkerPool source;
+	private final ExecutionPlan plan;
+	private final String[] poolNames;
+	private final boolean[] inRun;
+	private final int base;
+	//The ids taking part, and when only part of the pools is being run which ids in the span those are
+	private final int[] members;
+	private final boolean[] subset;
+	//Workers (not spawned) that failed themselves or were skipped, everything else that didn't succeed is downstream of them
+	private final Queue<Integer> failedRoots;
+	private final Csr children;
+	private final AtomicIntegerArray pendingParents;
+	private final AtomicIntegerArray failedParents;
+	private final AtomicIntegerArray stoppedPools;
+	private final long[] rank;
+	private final Queue<Integer> ready;
+	//Workers taken off the ready queue that didn't fit in the free slots, oldest first, they go first next time. Only touched while draining.
+	private final ArrayDeque<Integer> waiting;
+	//How many workers have started ahead of the oldest waiting worker. Only touched while draining.
+	private int overtaken;
+	private final Map<Integer,WorkerWrapper> inFlight;
+	//Pool timeouts, only touched by the thread that runs the pools
+	private final List<ScheduledFuture<?>> deadlines;
+	//Workers that waited to retry and are back on the ready queue
+	private final Map<Integer,WorkerWrapper> resuming;
+	private final Map<String,Queue<Integer>> parked;
+	private final AtomicIntegerArray holds;
+	private final AtomicIntegerArray subtreeFailed;
+	private final Map<Integer,Spawned> spawned;
+	private final AtomicInteger nextSpawnedId;
+	private final AtomicInteger unsettled;
+	//The combined input fingerprint of each worker and stage, set as it becomes ready, null without a fingerprint store
+	private final FingerprintStore fingerprints;
+	private final AtomicReferenceArray<String> inputs;
+	//Workers that extend Worker record their own changes, only the others are recorded here
+	private final StatusJournal journal;
+	private final CountDownLatch finished;
+
+	PoolRun(WorkerPool source, ExecutionPlan plan, String ...poolNames) {
+		this(source, plan, null, poolNames);
+	}
+
+	/***
+	 * Creates a run of just the passed ids from the passed pools, or of the whole pools if rerun is null. Every id outside rerun is treated as already settled, whatever its status. In a global plan rerun should hold the stages of the pools too.
+	 */
+	PoolRun(WorkerPool source, ExecutionPlan plan, int[] rerun, String ...poolNames) {
+		this.source = source;
+		this.plan = plan;
+		this.poolNames = poolNames;
+		this.children = plan.children();
+		Csr parents = plan.parents();
+
+		inRun = new boolean[plan.getPoolCount()];
+		int first = Integer.MAX_VALUE;
+		int last = -1;
+		int memberCount = 0;
+		for(String aPoolName : poolNames) {
+			int p = plan.getPoolId(aPoolName);
+			if(inRun[p])
+				continue;
+			inRun[p] = true;
+			memberCount += plan.getPoolEnd(p) - plan.getPoolStart(p);
+			first = Math.min(first, plan.getPoolStart(p));
+			last = Math.max(last, plan.getPoolEnd(p) - 1);
+			if(plan.isGlobal()) {
+				memberCount++;
+				first = Math.min(first, plan.getStage(p));
+				last = Math.max(last, plan.getStage(p));
+			}
+		}
+		base = last < 0 ? 0 : first;
+		int span = last < 0 ? 0 : last - first + 1;
+		if(rerun == null) {
+			subset = null;
+			members = new int[memberCount];
+			int m = 0;
+			for(int id = base; id < base + span; id++)
+				if(isMember(id))
+					members[m++] = id;
+		} else {
+			subset = new boolean[span];
+			for(int id : rerun)
+				subset[id - base] = true;
+			members = rerun;
+		}
+		failedRoots = new ConcurrentLinkedQueue<>();
+
+		int[] parentCount = new int[span];
+		for(int id : members)
+			for(int e = parents.offsets[id]; e < parents.offsets[id + 1]; e++)
+				if(isMember(parents.targets[e]))
+					parentCount[id - base]++;
+		pendingParents = new AtomicIntegerArray(parentCount);
+		failedParents = new AtomicIntegerArray(span);
+		stoppedPools = new AtomicIntegerArray(plan.getPoolCount());
+		if(source.isCriticalPathFirst()) {
+			rank = rank(span, parentCount);
+			//Ties go to the worker added first, same as without ranking
+			ready = new PriorityBlockingQueue<>(Math.max(span, 1), (a, b) -> {
+				int byRank = Long.compare(rankOf(b), rankOf(a));
+				return byRank != 0 ? byRank : Integer.compare(a, b);
+			});
+		} else {
+			rank = null;
+			ready = new ConcurrentLinkedQueue<>();
+		}
+		waiting = new ArrayDeque<>();
+		overtaken = 0;
+		inFlight = new ConcurrentHashMap<>();
+		deadlines = new ArrayList<>();
+		resuming = new ConcurrentHashMap<>();
+		parked = new ConcurrentHashMap<>();
+		int[] ones = new int[span];
+		Arrays.fill(ones, 1);
+		holds = new AtomicIntegerArray(ones);
+		subtreeFailed = new AtomicIntegerArray(span);
+		spawned = new ConcurrentHashMap<>();
+		nextSpawnedId = new AtomicInteger(plan.nodeCount());
+		unsettled = new AtomicInteger(members.length);
+		fingerprints = source.getFingerprintStore();
+		inputs = fingerprints == null ? null : new AtomicReferenceArray<String>(span);
+		journal = source.getStatusJournal();
+		finished = new CountDownLatch(1);
+
+		//Statuses may have been changed since the plan was compiled (a pool retry for instance), so start from the workers' own
+		for(int id : members) {
+			//A worker whose last attempt timed out but is still running can't be run again alongside it, so it stays TIMED_OUT
+			if(plan.syncStatus(id) == Status.PENDING && !plan.isStage(id) && source.isAbandoned(plan.getWorker(id))) {
+				LoggingTemplate.log(source.logger, LoggingTemplate.getWorkerStillRunningLevel(), LoggingTemplate.getWorkerStillRunning(), plan.getName(id));
+				plan.getWorker(id).setStatus(Status.TIMED_OUT);
+				plan.syncStatus(id);
+			}
+		}
+		//Workers that are not pending (for instance successes being skipped on a pool retry) are settled right away. Which ones is decided first, settling a failure changes the status of what is downstream of it.
+		int[] notPending = new int[members.length];
+		int count = 0;
+		for(int id : members)
+			if(!plan.isStage(id) && !plan.getStatus(id).equals(Status.PENDING))
+				notPending[count++] = id;
+		for(int i = 0; i < count; i++)
+			settle(notPending[i], StatusMeta.isFailed(plan.getStatus(notPending[i])));
+		for(int id : members) {
+			if(parentCount[id - base] != 0 || !plan.getStatus(id).equals(Status.PENDING))
+				continue;
+			if(plan.isStage(id)) {
+				plan.setStatus(id, Status.SUCCESS);
+				recordInputs(id);
+				settle(id, false);
+			} else if(isUpToDate(id)) {
+				skip(id);
+				settle(id, false);
+			} else {
+				ready.add(id);
+				publish(EventType.WORKER_READY, id, Status.PENDING, 0);
+			}
+		}
+		checkFinished();
+	}
+
+	ExecutionPlan getPlan() {
+		return plan;
+	}
+
+	String[] getPoolNames() {
+		return poolNames;
+	}
+
+	/***
+	 * Starts ready workers until the ready queue is empty or there are no free slots. Only ever called by the Dispatcher, one thread at a time.
+	 */
+	void startReady(ExecutionBackend backend) {
+		int maxOvertakes = source.getMaxOvertakes();
+		Iterator<Integer> it = waiting.iterator();
+		boolean oldest = true;
+		while(it.hasNext()) {
+			if(!oldest && overtaken >= maxOvertakes) {
+				//Go back and reserve slots for the oldest waiting worker
+				source.getDispatcher().drain();
+				return;
+			}
+			int id = it.next();
+			boolean reserve = oldest && overtaken >= maxOvertakes;
+			int result = tryStart(id, reserve, backend);
+			if(result == NO_ROOM) {
+				//The oldest has been overtaken enough, it keeps its reservation and nothing behind it starts. Otherwise keep looking for one that fits, as long as anything could.
+				if(reserve || source.getFreeSlots() <= 0)
+					return;
+				oldest = false;
+				continue;
+			}
+			it.remove();
+			if(oldest) {
+				source.cancelReservation(this);
+				overtaken = 0;
+			} else if(result == STARTED) {
+				overtaken++;
+			}
+		}
+		while(!ready.isEmpty()) {
+			if(!waiting.isEmpty() && overtaken >= maxOvertakes) {
+				//Go back and reserve slots for the oldest waiting worker
+				source.getDispatcher().drain();
+				return;
+			}
+			//Take the worker off the queue before looking at it, with a priority queue whatever is at the head can change between a peek and a poll
+			Integer id = ready.poll();
+			if(id == null)
+				return;
+			int result = tryStart(id, false, backend);
+			if(result == NO_ROOM) {
+				waiting.add(id);
+				//Nothing else can fit either
+				if(source.getFreeSlots() <= 0)
+					return;
+			} else if(result == STARTED && !waiting.isEmpty()) {
+				overtaken++;
+			}
+		}
+	}
+
+	private static final int STARTED = 0;
+	private static final int SETTLED = 1;
+	private static final int NO_ROOM = 2;
+
+	//Starts the worker if it fits, a worker in a stopped pool is settled and one whose resource tags are saturated is parked instead
+	private int tryStart(int id, boolean reserve, ExecutionBackend backend) {
+		WorkerWrapper resumed = resuming.get(id);
+		if(resumed != null && resumed.isCancelled()) {
+			//Cancelled while it waited to retry
+			resuming.remove(id);
+			resumed.giveUp();
+			return SETTLED;
+		}
+		//Workers in a pool that has stopped starting new threads are settled without being run, and keep their status. One already running carries on retrying.
+		if(resumed == null && isStopped(id)) {
+			if(isSpawned(id))
+				release(id, true);
+			else
+				settle(id, true);
+			checkFinished();
+			return SETTLED;
+		}
+		WorkerInterface aWorker = getWorker(id);
+		Set<String> tags = aWorker.getResourceTags();
+		Set<String> held = Collections.emptySet();
+		if(tags != null && !tags.isEmpty()) {
+			held = new HashSet<>();
+			String saturated = source.getResourcePermits().tryAcquire(tags, held);
+			if(saturated != null) {
+				park(saturated, id);
+				return SETTLED;
+			}
+		}
+		int slots = source.tryAcquireSlots(aWorker.getWeight(), reserve ? this : null);
+		if(slots == 0) {
+			source.getResourcePermits().release(held);
+			return NO_ROOM;
+		}
+		if(resumed != null) {
+			resuming.remove(id);
+			resumed.resume(held, slots);
+			publish(EventType.WORKER_STARTED, id, Status.RUNNING, 0);
+			submit(id, aWorker, resumed, backend);
+			return STARTED;
+		}
+		if(aWorker instanceof Worker)
+			((Worker) aWorker).setRun(this, id);
+		if(aWorker instanceof RecursiveWorker)
+			((RecursiveWorker) aWorker).setWorkerPool(source);
+		if(!isSpawned(id))
+			plan.setStatus(id, Status.RUNNING);
+		WorkerWrapper wrapper = new WorkerWrapper(this, id, aWorker, held, slots);
+		if(aWorker instanceof Worker)
+			((Worker) aWorker).setCancellationToken(wrapper.getCancellationToken());
+		inFlight.put(id, wrapper);
+		long timeout = aWorker.getTimeoutMilliseconds();
+		if(timeout > 0)
+			wrapper.setDeadline(getScheduler().schedule(() -> timeOut(wrapper, aWorker, timeout), timeout, TimeUnit.MILLISECONDS));
+		//The pool may have been cancelled since it was checked, and cancel would not have seen this worker yet
+		if(isStopped(id) && source.isCancelRunningOnFailure())
+			wrapper.cancel();
+		publish(EventType.WORKER_STARTED, id, Status.RUNNING, 0);
+		submit(id, aWorker, wrapper, backend);
+		return STARTED;
+	}
+
+	private void submit(int id, WorkerInterface aWorker, WorkerWrapper wrapper, ExecutionBackend backend) {
+		try {
+			backend.submit(aWorker, wrapper);
+		} catch (RejectedExecutionException e) {
+			source.logger.error("Pool {}, could not start worker {}: {}", plan.getPoolNameAt(getPoolIndex(id)), aWorker.getThreadName(), e);
+			aWorker.setStatus(Status.FAILED);
+			complete(id, 0);
+		}
+	}
+
+	/***
+	 * Called from the thread that ran the worker once it is done, with how long it ran for.
+	 */
+	void complete(int id, long milliseconds) {
+		WorkerWrapper wrapper = inFlight.remove(id);
+		int slots = wrapper == null ? 1 : wrapper.takeSlots();
+		source.releaseSlots(slots);
+		if(wrapper != null)
+			releaseResourceTags(wrapper);
+		WorkerInterface aWorker = getWorker(id);
+		if(aWorker instanceof Worker)
+			((Worker) aWorker).setRun(null, -1);
+		Status aStatus = isSpawned(id) ? aWorker.getStatus() : plan.syncStatus(id);
+		if(aStatus == null)
+			aStatus = Status.EMPTY;
+		source.workerCompleted(aWorker, milliseconds, aStatus, slots);
+		record(aWorker, aStatus);
+		if(inputs != null && !isSpawned(id)) {
+			String input = aStatus.equals(Status.SUCCESS) ? inputs.get(id - base) : null;
+			if(input != null)
+				fingerprints.put(aWorker.getThreadName(), input);
+			else
+				fingerprints.remove(aWorker.getThreadName());
+		}
+		publish(EventType.WORKER_FINISHED, id, aStatus, milliseconds);
+		boolean failed = StatusMeta.isFailed(aStatus);
+		//A pool that has already stopped has already cancelled what was running
+		boolean errored = (aStatus.equals(Status.FAILED) || aStatus.equals(Status.TIMED_OUT)) && !isStopped(id);
+		if(errored && source.isCancelRunningOnFailure())
+			cancel(getPoolIndex(id));
+		else if(errored && source.isNoNewThreadsOnFailure())
+			stop(getPoolIndex(id));
+		release(id, failed);
+		checkFinished();
+		source.getDispatcher().drain();
+	}
+
+	private void timeOut(WorkerWrapper wrapper, WorkerInterface aWorker, long timeout) {
+		if(wrapper.isFinished())
+			return;
+		LoggingTemplate.log(source.logger, LoggingTemplate.getWorkerTimedOutLevel(), LoggingTemplate.getWorkerTimedOut(), aWorker.getThreadName(), timeout);
+		wrapper.timeOut();
+	}
+
+	/***
+	 * Starts the clock on every pool in the run that has a timeout (see WorkerPool.setPoolTimeoutMilliseconds). Called once, as the run starts.
+	 */
+	void startDeadlines() {
+		for(int p = 0; p < inRun.length; p++) {
+			if(!inRun[p])
+				continue;
+			int poolId = p;
+			long timeout = source.getPoolTimeoutMilliseconds(plan.getPoolNameAt(p));
+			if(timeout > 0)
+				deadlines.add(getScheduler().schedule(() -> timeOutPool(poolId, timeout), timeout, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/***
+	 * Stops the clock on every pool in the run, called once the run is over.
+	 */
+	void cancelDeadlines() {
+		for(ScheduledFuture<?> aDeadline : deadlines)
+			aDeadline.cancel(false);
+	}
+
+	//A pool ran past its timeout: nothing more in it starts, and everything in it that is running (or waiting to retry) times out
+	private void timeOutPool(int poolId, long timeout) {
+		stoppedPools.set(poolId, 1);
+		List<WorkerWrapper> toTimeOut = new ArrayList<>();
+		for(Map.Entry<Integer,WorkerWrapper> anEntry : inFlight.entrySet())
+			if(getPoolIndex(anEntry.getKey()) == poolId)
+				toTimeOut.add(anEntry.getValue());
+		LoggingTemplate.log(source.logger, LoggingTemplate.getPoolTimedOutLevel(), LoggingTemplate.getPoolTimedOut(), plan.getPoolNameAt(poolId), timeout, toTimeOut.size());
+		for(WorkerWrapper aWrapper : toTimeOut)
+			aWrapper.timeOut();
+		//Workers that were waiting for a slot are settled without running
+		source.getDispatcher().drain();
+	}
+
+	//A worker timed out but kept its thread, so the backend needs one more thread until it gives it back
+	void threadAbandoned(WorkerInterface worker) {
+		source.threadAbandoned(worker);
+	}
+
+	void threadReturned(WorkerInterface worker) {
+		source.threadReturned(worker);
+	}
+
+	//Called by a worker whose attempt failed and that is about to try again
+	void retrying(int id, int attempt, Throwable error) {
+		EventPublisher publisher = source.getEventPublisher();
+		if(publisher.hasSubscribers())
+			publisher.publish(new WorkerEvent(EventType.WORKER_RETRYING, plan.getPoolNameAt(getPoolIndex(id)), getWorker(id).getThreadName(), Status.RUNNING, 0, attempt, error));
+	}
+
+	//Only builds the event if anyone is listening
+	private void publish(EventType type, int id, Status status, long milliseconds) {
+		EventPublisher publisher = source.getEventPublisher();
+		if(publisher.hasSubscribers())
+			publisher.publish(new WorkerEvent(type, plan.getPoolNameAt(getPoolIndex(id)), getWorker(id).getThreadName(), status, milliseconds, 0, null));
+	}
+
+	private void releaseResourceTags(WorkerWrapper wrapper) {
+		Set<String> tags = wrapper.takeResourceTags();
+		if(tags.isEmpty())
+			return;
+		source.getResourcePermits().release(tags);
+		source.getDispatcher().unpark(tags);
+	}
+
+	//Called each time a worker starts its first attempt
+	void started() {
+		RetryBudget budget = source.getRetryBudget();
+		if(budget != null)
+			budget.started();
+	}
+
+	//Called by a worker with retries left, returns false if the retry budget is used up
+	boolean tryRetry() {
+		RetryBudget budget = source.getRetryBudget();
+		return budget == null || budget.tryRetry();
+	}
+
+	//A Worker's attempt failed and it will retry after delay milliseconds, until then it gives back its slots and permits and waits on the scheduler
+	void waitToRetry(int id, WorkerWrapper wrapper, long delay) {
+		source.releaseSlots(wrapper.takeSlots());
+		releaseResourceTags(wrapper);
+		wrapper.startWaitToRetry();
+		wrapper.setBackoff(getScheduler().schedule(() -> {
+			if(wrapper.endWaitToRetry())
+				resume(id, wrapper);
+		}, delay, TimeUnit.MILLISECONDS));
+		//Cancelled while the attempt was running, so don't wait
+		if(wrapper.isCancelled() && wrapper.endWaitToRetry())
+			resume(id, wrapper);
+		source.getDispatcher().drain();
+	}
+
+	//Puts a worker that waited to retry back on the ready queue, it starts its next attempt once it gets slots and permits again
+	void resume(int id, WorkerWrapper wrapper) {
+		resuming.put(id, wrapper);
+		ready.add(id);
+		source.getDispatcher().drain();
+	}
+
+	//An AsyncWorker has gone idle waiting on its stage, so its slots can be used by other workers
+	void releaseSlots(WorkerWrapper wrapper) {
+		int slots = wrapper.takeSlots();
+		if(slots == 0)
+			return;
+		source.releaseSlots(slots);
+		source.getDispatcher().drain();
+	}
+
+	ScheduledExecutorService getScheduler() {
+		return source.getScheduler();
+	}
+
+	/***
+	 * Adds a new worker to the run, as part of the subtree of the running worker with the passed id. The new worker is ready to start straight away, its precedence constraints are ignored.
+	 * @throws IllegalStateException thrown if the worker with the passed id, and everything it spawned, has already finished
+	 */
+	void spawn(int parentId, WorkerInterface child) throws IllegalStateException {
+		//A finished subtree can't be reopened, its children may already have started
+		while(true) {
+			int held = getHolds(parentId);
+			if(held == 0)
+				throw new IllegalStateException("Worker " + getWorker(parentId).getThreadName() + " has already finished, so it can no longer spawn workers");
+			if(casHolds(parentId, held, held + 1))
+				break;
+		}
+		int id = nextSpawnedId.getAndIncrement();
+		spawned.put(id, new Spawned(child, parentId, getPoolIndex(parentId), rankOf(parentId)));
+		LoggingTemplate.log(source.logger, LoggingTemplate.getWorkerSpawnLevel(), LoggingTemplate.getWorkerSpawn(), getWorker(parentId).getThreadName(), child.getThreadName());
+		ready.add(id);
+		publish(EventType.WORKER_READY, id, Status.PENDING, 0);
+		source.getDispatcher().drain();
+	}
+
+	/***
+	 * Waits for the run to finish.
+	 * @param seconds maximum number of seconds to wait
+	 * @return true if the run finished
+	 */
+	boolean await(long seconds) throws InterruptedException {
+		return finished.await(seconds, TimeUnit.SECONDS);
+	}
+
+	//Walks the plan children first, so every child's rank is known before its parents'. Pool stages take no time themselves.
+	private long[] rank(int span, int[] parentCount) {
+		long[] output = new long[span];
+		int[] order = subset == null ? plan.topologicalOrder() : subsetOrder(parentCount);
+		for(int i = order.length - 1; i >= 0; i--) {
+			int id = order[i];
+			if(id < base || id >= base + span || !isMember(id))
+				continue;
+			long longest = 0;
+			for(int e = children.offsets[id]; e < children.offsets[id + 1]; e++)
+				if(isMember(children.targets[e]))
+					longest = Math.max(longest, output[children.targets[e] - base]);
+			output[id - base] = longest + (plan.isStage(id) ? 0 : source.getExpectedMilliseconds(plan.getWorker(id)));
+		}
+		return output;
+	}
+
+	/***
+	 * Waits for the run to finish, even if interrupted. Used once the run has been cancelled, so the workers it started never outlive it.
+	 */
+	void awaitUninterruptibly() {
+		boolean interrupted = false;
+		while(true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/***
+	 * Stops every pool in the run from starting new workers, and interrupts every worker still running.
+	 */
+	void cancel() {
+		for(int p = 0; p < inRun.length; p++)
+			if(inRun[p])
+				stoppedPools.set(p, 1);
+		for(WorkerWrapper aWrapper : inFlight.values())
+			aWrapper.cancel();
+		source.getDispatcher().drain();
+	}
+
+	private void cancel(int poolId) {
+		stop(poolId);
+		int count = 0;
+		for(Map.Entry<Integer,WorkerWrapper> anEntry : inFlight.entrySet()) {
+			if(getPoolIndex(anEntry.getKey()) == poolId) {
+				anEntry.getValue().cancel();
+				count++;
+			}
+		}
+		if(count > 0)
+			LoggingTemplate.log(source.logger, LoggingTemplate.getPoolCancelRunningOnErrorLevel(), LoggingTemplate.getPoolCancelRunningOnError(), plan.getPoolNameAt(poolId), count);
+	}
+
+	//Moves every worker parked on the passed tag back to the ready queue
+	void unpark(String tag) {
+		Queue<Integer> waiting = parked.get(tag);
+		if(waiting == null)
+			return;
+		Integer id;
+		while((id = waiting.poll()) != null)
+			ready.add(id);
+	}
+
+	private void park(String tag, int id) {
+		parked.computeIfAbsent(tag, t -> new ConcurrentLinkedQueue<>()).add(id);
+		//A permit freed between trying and parking would have found nothing to unpark, so check again now the worker is parked
+		if(source.getResourcePermits().hasRoom(tag))
+			unpark(tag);
+	}
+
+	private boolean isMember(int id) {
+		return inRun[plan.getPoolIndex(id)] && (subset == null || (id >= base && id - base < subset.length && subset[id - base]));
+	}
+
+	private boolean isStopped(int id) {
+		return stoppedPools.get(getPoolIndex(id)) != 0;
+	}
+
+	private boolean isSpawned(int id) {
+		return id >= plan.nodeCount();
+	}
+
+	private WorkerInterface getWorker(int id) {
+		return isSpawned(id) ? spawned.get(id).worker : plan.getWorker(id);
+	}
+
+	private int getPoolIndex(int id) {
+		return isSpawned(id) ? spawned.get(id).poolId : plan.getPoolIndex(id);
+	}
+
+	//Kahn's algorithm over just the members, so a partial run is ordered without walking the whole plan
+	private int[] subsetOrder(int[] parentCount) {
+		int[] remaining = new int[members.length];
+		int[] order = new int[members.length];
+		int head = 0;
+		int tail = 0;
+		int[] index = new int[parentCount.length];
+		for(int m = 0; m < members.length; m++) {
+			index[members[m] - base] = m;
+			remaining[m] = parentCount[members[m] - base];
+			if(remaining[m] == 0)
+				order[tail++] = members[m];
+		}
+		while(head < tail) {
+			int id = order[head++];
+			for(int e = children.offsets[id]; e < children.offsets[id + 1]; e++) {
+				int aChild = children.targets[e];
+				if(isMember(aChild) && --remaining[index[aChild - base]] == 0)
+					order[tail++] = aChild;
+			}
+		}
+		return order;
+	}
+
+	/***
+	 * Returns true if every worker in the run succeeded.
+	 */
+	boolean isSuccess() {
+		return failedRoots.isEmpty();
+	}
+
+	/***
+	 * Returns the ids of the workers in the passed pool that didn't succeed: every worker that failed or was skipped, and everything downstream of them that didn't succeed. Rerunning just these retries the pool.
+	 * Walks out from the failures only, so costs time in proportion to the number of workers returned.
+	 */
+	int[] getRerun(int poolId) {
+		Set<Integer> found = new HashSet<>();
+		ArrayDeque<Integer> toVisit = new ArrayDeque<>();
+		for(int id : failedRoots)
+			if(plan.getPoolIndex(id) == poolId && found.add(id))
+				toVisit.add(id);
+		while(!toVisit.isEmpty()) {
+			int id = toVisit.poll();
+			for(int e = children.offsets[id]; e < children.offsets[id + 1]; e++) {
+				int aChild = children.targets[e];
+				if(isMember(aChild) && !plan.isStage(aChild) && plan.getPoolIndex(aChild) == poolId && !Status.SUCCESS.equals(plan.getWorker(aChild).getStatus()) && found.add(aChild))
+					toVisit.add(aChild);
+			}
+		}
+		int[] output = new int[found.size()];
+		int i = 0;
+		for(int id : found)
+			output[i++] = id;
+		Arrays.sort(output);
+		return output;
+	}
+
+	/***
+	 * Returns the ids taking part in the run from the passed pool, in id order.
+	 */
+	int[] getMembers(int poolId) {
+		int count = 0;
+		for(int id : members)
+			if(plan.getPoolIndex(id) == poolId && !plan.isStage(id))
+				count++;
+		int[] output = new int[count];
+		int i = 0;
+		for(int id : members)
+			if(plan.getPoolIndex(id) == poolId && !plan.isStage(id))
+				output[i++] = id;
+		return output;
+	}
+
+	private long rankOf(int id) {
+		if(rank == null)
+			return 0;
+		return isSpawned(id) ? spawned.get(id).rank : rank[id - base];
+	}
+
+	private int getHolds(int id) {
+		return isSpawned(id) ? spawned.get(id).holds.get() : holds.get(id - base);
+	}
+
+	private boolean casHolds(int id, int expect, int update) {
+		return isSpawned(id) ? spawned.get(id).holds.compareAndSet(expect, update) : holds.compareAndSet(id - base, expect, update);
+	}
+
+	/*
+	 * Drops one hold on the passed worker, either the worker itself finishing or a worker it spawned having its whole subtree finish.
+	 * Whoever drops the last hold passes it up to the spawning worker, or for a worker in the plan settles it. A failure anywhere in a subtree fails the worker at its root.
+	 */
+	private void release(int id, boolean failed) {
+		int current = id;
+		boolean currentFailed = failed;
+		while(true) {
+			int remaining;
+			if(isSpawned(current)) {
+				Spawned node = spawned.get(current);
+				if(currentFailed)
+					node.subtreeFailed = true;
+				remaining = node.holds.decrementAndGet();
+				if(remaining != 0)
+					return;
+				spawned.remove(current);
+				currentFailed = node.subtreeFailed || currentFailed;
+				if(currentFailed && Status.SUCCESS.equals(node.worker.getStatus()))
+					node.worker.setStatus(Status.FAILED);
+				current = node.parent;
+			} else {
+				if(currentFailed)
+					subtreeFailed.set(current - base, 1);
+				remaining = holds.decrementAndGet(current - base);
+				if(remaining != 0)
+					return;
+				boolean aFailed = subtreeFailed.get(current - base) != 0;
+				//The worker itself succeeded, but something it spawned didn't
+				if(aFailed && Status.SUCCESS.equals(plan.getStatus(current))) {
+					plan.getWorker(current).setStatus(Status.FAILED);
+					plan.syncStatus(current);
+				}
+				settle(current, aFailed);
+				return;
+			}
+		}
+	}
+
+	private void stop(int poolId) {
+		if(stoppedPools.compareAndSet(poolId, 0, 1))
+			LoggingTemplate.log(source.logger, LoggingTemplate.getPoolStopNextWorkerOnErrorLevel(), LoggingTemplate.getPoolStopNextWorkerOnError(), plan.getPoolNameAt(poolId));
+	}
+
+	private void settle(int id, boolean failed) {
+		if(failed && !plan.isStage(id))
+			failedRoots.add(id);
+		//Worklist rather than recursion, chains of failures can be as long as the pool. Successes are stored as -(id + 1).
+		ArrayDeque<Integer> toSettle = null;
+		int current = id;
+		boolean currentFailed = failed;
+		while(true) {
+			unsettled.decrementAndGet();
+			for(int e = children.offsets[current]; e < children.offsets[current + 1]; e++) {
+				int aChild = children.targets[e];
+				if(!isMember(aChild))
+					continue;
+				boolean childFailed;
+				if(currentFailed && !plan.isStage(aChild)) {
+					//A worker's first failed parent settles it, and so everything downstream of it, straight away rather than once its other parents finish
+					boolean first = failedParents.incrementAndGet(aChild - base) == 1;
+					pendingParents.decrementAndGet(aChild - base);
+					if(!first || !plan.getStatus(aChild).equals(Status.PENDING))
+						continue;
+					childFailed = true;
+				} else {
+					if(currentFailed)
+						failedParents.incrementAndGet(aChild - base);
+					//Failures are counted before the pending count drops, so whoever takes it to zero sees every failure
+					if(pendingParents.decrementAndGet(aChild - base) != 0 || !plan.getStatus(aChild).equals(Status.PENDING))
+						continue;
+					childFailed = failedParents.get(aChild - base) > 0;
+					//Already settled by its first failed parent
+					if(childFailed && !plan.isStage(aChild))
+						continue;
+				}
+				if(plan.isStage(aChild)) {
+					//A pool stage only passes a failure on if the next pool shouldn't start after a failure
+					childFailed = childFailed && !source.isStartNextPoolOnFailure();
+					plan.setStatus(aChild, childFailed ? Status.PRECEDENCE_FAILED : Status.SUCCESS);
+					if(!childFailed)
+						recordInputs(aChild);
+				} else if(childFailed && isStopped(aChild)) {
+					//Never started because its pool stopped, so it keeps its status
+				} else if(childFailed) {
+					plan.setStatus(aChild, Status.PRECEDENCE_FAILED);
+					plan.getWorker(aChild).setStatus(Status.PRECEDENCE_FAILED);
+					record(plan.getWorker(aChild), Status.PRECEDENCE_FAILED);
+				} else if(isUpToDate(aChild)) {
+					skip(aChild);
+				} else {
+					ready.add(aChild);
+					publish(EventType.WORKER_READY, aChild, Status.PENDING, 0);
+					continue;
+				}
+				if(toSettle == null)
+					toSettle = new ArrayDeque<>();
+				toSettle.add(childFailed ? aChild : -(aChild + 1));
+			}
+			if(toSettle == null || toSettle.isEmpty())
+				break;
+			current = toSettle.poll();
+			currentFailed = current >= 0;
+			if(!currentFailed)
+				current = -current - 1;
+		}
+	}
+
+	//Works out the combined input fingerprint of a worker whose parents have all settled, and returns true if it is the one it had when it last succeeded
+	private boolean isUpToDate(int id) {
+		if(inputs == null)
+			return false;
+		String input = recordInputs(id);
+		return input != null && input.equals(fingerprints.get(plan.getName(id)));
+	}
+
+	private String recordInputs(int id) {
+		if(inputs == null)
+			return null;
+		String input = combinedFingerprint(id);
+		inputs.set(id - base, input);
+		return input;
+	}
+
+	/*
+	 * The worker's own fingerprint along with the combined fingerprint of every parent, null if it or any parent has none. A stage has no fingerprint of its own, just its parents'.
+	 * A parent outside the run settled in an earlier run, so its fingerprint from when it last succeeded is used.
+	 */
+	private String combinedFingerprint(int id) {
+		String own;
+		if(plan.isStage(id)) {
+			own = "";
+		} else {
+			try {
+				own = plan.getWorker(id).getInputFingerprint();
+			} catch (Exception e) {
+				own = null;
+			}
+		}
+		if(own == null)
+			return null;
+		Fingerprint output = new Fingerprint().add(own);
+		Csr parents = plan.parents();
+		for(int e = parents.offsets[id]; e < parents.offsets[id + 1]; e++) {
+			int aParent = parents.targets[e];
+			String input = isMember(aParent) ? inputs.get(aParent - base) : null;
+			if(input == null && !plan.isStage(aParent))
+				input = fingerprints.get(plan.getName(aParent));
+			if(input == null)
+				return null;
+			output.add(plan.getName(aParent)).add(input);
+		}
+		return output.toString();
+	}
+
+	private void skip(int id) {
+		LoggingTemplate.log(source.logger, LoggingTemplate.getWorkerUpToDateLevel(), LoggingTemplate.getWorkerUpToDate(), plan.getName(id));
+		plan.setStatus(id, Status.SUCCESS);
+		plan.getWorker(id).setStatus(Status.SUCCESS);
+		record(plan.getWorker(id), Status.SUCCESS);
+		publish(EventType.WORKER_SKIPPED, id, Status.SUCCESS, 0);
+	}
+
+	private void record(WorkerInterface aWorker, Status aStatus) {
+		if(journal != null && !(aWorker instanceof Worker))
+			journal.record(aWorker.getThreadName(), aStatus);
+	}
+
+	private void checkFinished() {
+		if(unsettled.get() == 0)
+			finished.countDown();
+	}
+
+	//A worker spawned while the run is going
+	private static class Spawned {
+		private final WorkerInterface worker;
+		private final int parent;
+		private final int poolId;
+		private final long rank;
+		private final AtomicInteger holds;
+		private volatile boolean subtreeFailed;
+
+		private Spawned(WorkerInterface worker, int parent, int poolId, long rank) {
+			this.worker = worker;
+			this.parent = parent;
+			this.poolId = poolId;
+			this.rank = rank;
+			this.holds = new AtomicInteger(1);
+			this.subtreeFailed = false;
+		}
+	}
+}
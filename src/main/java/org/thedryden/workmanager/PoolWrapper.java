@@ -2,22 +2,29 @@ package org.thedryden.workmanager;
 
 class PoolWrapper implements Runnable  {
 	private WorkerPool source;
-	private String poolName;
-	
-	
-	public PoolWrapper(WorkerPool source, String poolName) {
+	private boolean global;
+	private String[] poolNames;
+
+
+	public PoolWrapper(WorkerPool source, boolean global, String ...poolNames) {
 		super();
 		this.source = source;
-		this.poolName = poolName;
+		this.global = global;
+		this.poolNames = poolNames;
 	}
 
 
 	@Override
 	public void run() {
 		try {
-			source.startOnePoolHelper(poolName);
+			if(global) {
+				source.startGlobalHelper(poolNames);
+			} else {
+				for(String aPoolName : poolNames)
+					source.startOnePoolHelper(aPoolName);
+			}
 		} catch (InterruptedException | DuplicateThreadNameException | CircularPrecedenceConstraintException | AlreadyRunningException e) {
-			source.logger.error("Pool {}, failed with the following error: {}", poolName, e);
+			source.logger.error("Pool {}, failed with the following error: {}", String.join(", ", poolNames), e);
 		}
 	}
 }
@@ -0,0 +1,118 @@
+package org.thedryden.workmanager;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/***
+ * A Worker that can split its own work into subtasks. Inside worker call fork for each piece of work that can run on its own, the subtasks run on the ForkJoinPool shared by the WorkerPool while worker carries on.
+ * Subtasks count against the same maxThreadCount as workers: a subtask only gets its own thread if a slot is free, otherwise it is run right away on the thread that forked it, so forking never goes over the limit.
+ * The worker only reaches success once every subtask it forked (including subtasks forked by subtasks) has finished, and if any of them failed the worker fails (and retries if set to) with the subtask's error.
+ *
+ * For example, to process a large list in chunks:
+ * <pre>
+ * public void worker() throws Exception {
+ * 	for(List&lt;Row&gt; chunk : chunks(rows, 1_000))
+ * 		fork(() -&gt; load(chunk));
+ * }
+ * </pre>
+ * @author Matthew Dryden
+ *
+ */
+public abstract class RecursiveWorker extends Worker {
+	protected WorkerPool workerPool;
+	protected Queue<ForkJoinTask<?>> forked;
+
+	/***
+	 * Creates a new recursive worker, see Worker for details.
+	 */
+	public RecursiveWorker() {
+		super();
+		workerPool = null;
+		forked = new ConcurrentLinkedQueue<>();
+	}
+	/***
+	 * Forks a subtask that returns a value. Can be called from worker or from another subtask.
+	 * @param subtask the work to run
+	 * @return the forked task, call join on it if you need its result before worker returns
+	 */
+	public <T> ForkJoinTask<T> fork(Callable<T> subtask) {
+		ForkJoinTask<T> task;
+		ForkJoinPool pool = workerPool == null ? null : workerPool.getForkJoinPool();
+		if(pool != null && workerPool.tryAcquireSlot()) {
+			task = ForkJoinTask.adapt(() -> {
+				try {
+					return subtask.call();
+				} finally {
+					workerPool.releaseSlot();
+					workerPool.getDispatcher().drain();
+				}
+			});
+			forked.add(task);
+			if(!tryExecute(pool, task)) {
+				//The pool was retired (see WorkerPool.setMaxThreadCount) after we fetched it, so try the one that replaced it
+				ForkJoinPool current = workerPool.getForkJoinPool();
+				//Still no thread, so do the work here. The task frees its own slot when it finishes, wherever it runs.
+				if(current == pool || !tryExecute(current, task))
+					task.quietlyInvoke();
+			}
+		} else {
+			//No free slot, so do the work here. Any error is kept for join, same as a forked subtask.
+			task = ForkJoinTask.adapt(subtask);
+			forked.add(task);
+			task.quietlyInvoke();
+		}
+		return task;
+	}
+	/***
+	 * Forks a subtask. Can be called from worker or from another subtask.
+	 * @param subtask the work to run
+	 * @return the forked task, call join on it if you need to wait for it before worker returns
+	 */
+	public ForkJoinTask<?> fork(Runnable subtask) {
+		return fork(() -> {
+			subtask.run();
+			return null;
+		});
+	}
+	/***
+	 * Calls worker, then waits for every subtask it forked. If worker failed its error is the one thrown, otherwise the first subtask error is.
+	 */
+	@Override
+	protected void callWorker() throws Exception {
+		Exception error = null;
+		try {
+			worker();
+		} catch (Exception e) {
+			error = e;
+		}
+		//Even after a failure the subtasks still have to finish, so they never outlive the worker (or an attempt overlaps the next one)
+		ForkJoinTask<?> task;
+		while((task = forked.poll()) != null) {
+			try {
+				task.join();
+			} catch (Exception e) {
+				if(error == null)
+					error = e;
+			}
+		}
+		if(error != null)
+			throw error;
+	}
+
+	private static boolean tryExecute(ForkJoinPool pool, ForkJoinTask<?> task) {
+		try {
+			pool.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	void setWorkerPool(WorkerPool workerPool) {
+		this.workerPool = workerPool;
+	}
+}
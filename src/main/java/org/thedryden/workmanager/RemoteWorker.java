@@ -0,0 +1,56 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.CompletionStage;
+
+/***
+ * A worker that runs on an agent rather than here, see Coordinator. Add it to a WorkerPool like any other worker, with its precedence constraints, retries and timeout, and each attempt is leased to the next agent with a free slot, which creates the real worker from the factory key and runs it once.
+ * The agent creates the worker with the thread name of this one, so a factory can tell which of many workers of the same class to create. By default the factory key is the name of the class to create.
+ * @author Matthew Dryden
+ *
+ */
+public class RemoteWorker extends AsyncWorker {
+	protected Coordinator coordinator;
+	protected String factoryKey;
+
+	/***
+	 * Creates a worker leased to agents of the passed coordinator, which the agent creates from the factory registered under the thread name.
+	 * @param coordinator the coordinator to lease through
+	 * @param threadName the thread name of the worker, also used as the factory key
+	 */
+	public RemoteWorker(Coordinator coordinator, String threadName) {
+		this(coordinator, threadName, threadName);
+	}
+	/***
+	 * Creates a worker leased to agents of the passed coordinator, which the agent creates from the factory registered under factoryKey (see Agent.register).
+	 * @param coordinator the coordinator to lease through
+	 * @param threadName the thread name of the worker
+	 * @param factoryKey the key of the factory the agent creates the worker from, or the name of its class
+	 */
+	public RemoteWorker(Coordinator coordinator, String threadName, String factoryKey) {
+		super();
+		this.coordinator = coordinator;
+		this.factoryKey = factoryKey;
+		setThreadName(threadName);
+	}
+	/***
+	 * Returns the key of the factory the agent creates the worker from.
+	 * @return the current value of factoryKey
+	 */
+	public String getFactoryKey() {
+		return factoryKey;
+	}
+	/***
+	 * Returns the coordinator this worker is leased through.
+	 * @return the coordinator this worker is leased through
+	 */
+	public Coordinator getCoordinator() {
+		return coordinator;
+	}
+	/***
+	 * Leases the worker to an agent, the stage completes when the agent reports back.
+	 */
+	@Override
+	public CompletionStage<Void> workerAsync() throws Exception {
+		return coordinator.lease(this);
+	}
+}
@@ -0,0 +1,70 @@
+package org.thedryden.workmanager;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Permit counts for resource tags, shared by every pool run of a WorkerPool. A worker may only start once it holds a permit for every one of its tags that has a limit, tags without a limit are never counted.
+ * @author Matthew Dryden
+ *
+ */
+class ResourcePermits {
+	private final Map<String,Integer> limits;
+	private final Map<String,AtomicInteger> inUse;
+
+	ResourcePermits() {
+		limits = new ConcurrentHashMap<>();
+		inUse = new ConcurrentHashMap<>();
+	}
+
+	void setLimit(String tag, int permits) {
+		inUse.putIfAbsent(tag, new AtomicInteger());
+		limits.put(tag, permits);
+	}
+
+	void removeLimit(String tag) {
+		limits.remove(tag);
+	}
+
+	int getLimit(String tag) {
+		Integer limit = limits.get(tag);
+		return limit == null ? -1 : limit;
+	}
+
+	/*
+	 * All or nothing: takes a permit for every limited tag, adding each to taken, and returns null.
+	 * If any tag is saturated the permits already taken are given back, taken is left empty, and the saturated tag is returned.
+	 */
+	String tryAcquire(Set<String> tags, Set<String> taken) {
+		for(String aTag : tags) {
+			Integer limit = limits.get(aTag);
+			if(limit == null)
+				continue;
+			AtomicInteger count = inUse.get(aTag);
+			while(true) {
+				int current = count.get();
+				if(current >= limit) {
+					release(taken);
+					taken.clear();
+					return aTag;
+				}
+				if(count.compareAndSet(current, current + 1))
+					break;
+			}
+			taken.add(aTag);
+		}
+		return null;
+	}
+
+	boolean hasRoom(String tag) {
+		Integer limit = limits.get(tag);
+		return limit == null || inUse.get(tag).get() < limit;
+	}
+
+	void release(Set<String> taken) {
+		for(String aTag : taken)
+			inUse.get(aTag).decrementAndGet();
+	}
+}
@@ -0,0 +1,51 @@
+package org.thedryden.workmanager;
+
+/***
+ * Caps how many worker retries a WorkerPool makes, so a failing downstream system can't set off a retry storm that fills the pool with retries.
+ * The budget is a bucket of up to maxRetries tokens that starts full. Every retry takes a token, and every first attempt of a worker puts back retryRatio of a token, so over time at most retryRatio retries are made per worker started, plus maxRetries in a burst.
+ * A worker that fails with retries left while the bucket is empty fails for good, and LoggingTemplate.retryBudgetExhausted is logged.
+ * @author Matthew Dryden
+ *
+ */
+public class RetryBudget {
+	protected final int maxRetries;
+	protected final double retryRatio;
+	protected double tokens;
+
+	/***
+	 * Creates a full budget.
+	 * @param maxRetries the most retries that can be made in a burst, at least 0
+	 * @param retryRatio the retries earned by each worker started, for instance 0.1 for one retry per ten workers
+	 */
+	public RetryBudget(int maxRetries, double retryRatio) {
+		if(maxRetries < 0 || retryRatio < 0)
+			throw new IllegalArgumentException("maxRetries and retryRatio can't be negative, got " + maxRetries + " and " + retryRatio);
+		this.maxRetries = maxRetries;
+		this.retryRatio = retryRatio;
+		this.tokens = maxRetries;
+	}
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+	public double getRetryRatio() {
+		return retryRatio;
+	}
+	/***
+	 * Returns the number of retries that could be made right now.
+	 * @return the number of whole tokens in the bucket
+	 */
+	public synchronized int getAvailable() {
+		return (int) tokens;
+	}
+
+	synchronized void started() {
+		tokens = Math.min(maxRetries, tokens + retryRatio);
+	}
+
+	synchronized boolean tryRetry() {
+		if(tokens < 1)
+			return false;
+		tokens--;
+		return true;
+	}
+}
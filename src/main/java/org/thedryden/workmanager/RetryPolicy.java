@@ -0,0 +1,92 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/***
+ * How long to wait before each retry. The wait before retry n is initialMilliseconds * multiplier^(n-1), capped at maxMilliseconds, and then shortened by a random amount of up to jitter of itself, so workers that failed together don't all retry together.
+ * Immutable, build one with fixed or exponential and the with methods. For example, waits of about 100ms, 200ms, 400ms... up to 30 seconds, each up to half shorter at random:
+ * <pre>
+ * worker.setRetryPolicy(RetryPolicy.exponential(100, 30_000).withJitter(0.5));
+ * </pre>
+ * @author Matthew Dryden
+ *
+ */
+public class RetryPolicy {
+	protected final long initialMilliseconds;
+	protected final double multiplier;
+	protected final long maxMilliseconds;
+	protected final double jitter;
+
+	/***
+	 * Creates a policy, see the class description for what each value does.
+	 * @param initialMilliseconds the wait before the first retry
+	 * @param multiplier how much longer each wait is than the one before, 1 for a fixed wait
+	 * @param maxMilliseconds the longest wait
+	 * @param jitter the largest fraction of each wait that is taken off at random, between 0 and 1
+	 */
+	public RetryPolicy(long initialMilliseconds, double multiplier, long maxMilliseconds, double jitter) {
+		if(initialMilliseconds < 0 || multiplier < 1 || maxMilliseconds < initialMilliseconds || jitter < 0 || jitter > 1)
+			throw new IllegalArgumentException("Retry policy needs 0 <= initialMilliseconds <= maxMilliseconds, multiplier >= 1 and 0 <= jitter <= 1, got " + initialMilliseconds + ", " + multiplier + ", " + maxMilliseconds + ", " + jitter);
+		this.initialMilliseconds = initialMilliseconds;
+		this.multiplier = multiplier;
+		this.maxMilliseconds = maxMilliseconds;
+		this.jitter = jitter;
+	}
+	/***
+	 * Returns a policy that waits the same number of seconds before every retry, with no jitter. This is what setRetry(retryAttempts, retryWaitSeconds) uses.
+	 * @param seconds the number of seconds to wait before each retry
+	 * @return a fixed policy
+	 */
+	public static RetryPolicy fixed(long seconds) {
+		return new RetryPolicy(seconds * 1_000, 1, seconds * 1_000, 0);
+	}
+	/***
+	 * Returns a policy that doubles the wait before each retry, from initialMilliseconds up to maxMilliseconds, with no jitter.
+	 * @param initialMilliseconds the wait before the first retry
+	 * @param maxMilliseconds the longest wait
+	 * @return an exponential policy
+	 */
+	public static RetryPolicy exponential(long initialMilliseconds, long maxMilliseconds) {
+		return new RetryPolicy(initialMilliseconds, 2, maxMilliseconds, 0);
+	}
+	/***
+	 * Returns a copy of this policy with the passed multiplier.
+	 * @param multiplier how much longer each wait is than the one before, at least 1
+	 * @return a copy of this policy with the passed multiplier
+	 */
+	public RetryPolicy withMultiplier(double multiplier) {
+		return new RetryPolicy(initialMilliseconds, multiplier, maxMilliseconds, jitter);
+	}
+	/***
+	 * Returns a copy of this policy with the passed jitter.
+	 * @param jitter the largest fraction of each wait that is taken off at random, between 0 and 1
+	 * @return a copy of this policy with the passed jitter
+	 */
+	public RetryPolicy withJitter(double jitter) {
+		return new RetryPolicy(initialMilliseconds, multiplier, maxMilliseconds, jitter);
+	}
+	/***
+	 * Returns how long to wait before the passed retry.
+	 * @param retry the retry about to happen, starting at 1
+	 * @return the number of milliseconds to wait
+	 */
+	public long getDelayMilliseconds(int retry) {
+		double delay = initialMilliseconds * Math.pow(multiplier, Math.max(retry - 1, 0));
+		delay = Math.min(delay, maxMilliseconds);
+		if(jitter > 0)
+			delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+		return Math.round(delay);
+	}
+	public long getInitialMilliseconds() {
+		return initialMilliseconds;
+	}
+	public double getMultiplier() {
+		return multiplier;
+	}
+	public long getMaxMilliseconds() {
+		return maxMilliseconds;
+	}
+	public double getJitter() {
+		return jitter;
+	}
+}
@@ -0,0 +1,274 @@
+package org.thedryden.workmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/***
+ * Chooses which workers run, see WorkerPool.setSelection. Workers are chosen by glob (matched against thread and pool names, ignoring case), by regular expression (matched against the whole thread name), or by tag (see Worker.addTag), and anything matching an exclude is left out.
+ * With upstream set, every worker a chosen worker waits on, directly or not, is chosen too, so nothing runs without its parents. With downstream set everything that waits on a chosen worker is chosen, which reruns a graph from a point onwards.
+ * A selection never changes the pools, it is applied to the compiled ExecutionPlan in one pass, in time proportional to the number of workers plus the number of precedence constraints, so the same pools can be run again and again with different selections.
+ * An excluded worker never runs, even if upstream or downstream would have pulled it in. A worker that waits on one that isn't chosen simply doesn't wait for it.
+ * @author Matthew Dryden
+ *
+ */
+public class Selection {
+	private final List<Matcher> includes;
+	private final List<Matcher> excludes;
+	private boolean all;
+	private boolean upstream;
+	private boolean downstream;
+
+	/***
+	 * Creates a selection that chooses nothing, until something is included.
+	 */
+	public Selection() {
+		includes = new ArrayList<>();
+		excludes = new ArrayList<>();
+		all = false;
+		upstream = false;
+		downstream = false;
+	}
+	/***
+	 * Parses a run arg, see WorkerPool.setRunArg. Each entry is ALL, or a glob, optionally preceded by a minus (-) to exclude rather than include. A glob can be replaced by tag: followed by a tag, or regex: followed by a regular expression.
+	 * @param runArg a list of ALL, pool names, worker names, globs, tags and regular expressions
+	 * @return the selection
+	 */
+	public static Selection fromRunArg(String ...runArg) {
+		Selection output = new Selection();
+		for(String anArg : runArg) {
+			if(anArg.equalsIgnoreCase("ALL")) {
+				output.includeAll();
+				continue;
+			}
+			boolean add = true;
+			if(anArg.startsWith("-")) {
+				add = false;
+				anArg = anArg.substring(1);
+			//plus doesn't do anything, but since we look for minus it's likely people will use it
+			} else if(anArg.startsWith("+")) {
+				anArg = anArg.substring(1);
+			}
+			if(anArg.regionMatches(true, 0, "tag:", 0, 4)) {
+				if(add)
+					output.includeTag(anArg.substring(4));
+				else
+					output.excludeTag(anArg.substring(4));
+			} else if(anArg.regionMatches(true, 0, "regex:", 0, 6)) {
+				if(add)
+					output.includeRegex(anArg.substring(6));
+				else
+					output.excludeRegex(anArg.substring(6));
+			} else if(add) {
+				output.include(anArg);
+			} else {
+				output.exclude(anArg);
+			}
+		}
+		return output;
+	}
+	/***
+	 * Chooses every worker, except those the WorkerPool marked not in all (see WorkerPool.setNotInAll) unless they are also included some other way.
+	 * @return this - for method chaining
+	 */
+	public Selection includeAll() {
+		all = true;
+		return this;
+	}
+	/***
+	 * Chooses every worker whose thread name, or pool name, matches the passed glob, ignoring case. * matches any run of characters and ? any one character, so a plain name matches just that worker or pool.
+	 * @param glob the glob to match
+	 * @return this - for method chaining
+	 */
+	public Selection include(String glob) {
+		includes.add(glob(glob));
+		return this;
+	}
+	/***
+	 * Chooses every worker whose whole thread name matches the passed regular expression.
+	 * @param regex the regular expression to match
+	 * @return this - for method chaining
+	 */
+	public Selection includeRegex(String regex) {
+		includes.add(regex(regex));
+		return this;
+	}
+	/***
+	 * Chooses every worker with the passed tag.
+	 * @param tag the tag to match
+	 * @return this - for method chaining
+	 */
+	public Selection includeTag(String tag) {
+		includes.add(tag(tag));
+		return this;
+	}
+	/***
+	 * Leaves out every worker whose thread name, or pool name, matches the passed glob, see include.
+	 * @param glob the glob to match
+	 * @return this - for method chaining
+	 */
+	public Selection exclude(String glob) {
+		excludes.add(glob(glob));
+		return this;
+	}
+	/***
+	 * Leaves out every worker whose whole thread name matches the passed regular expression.
+	 * @param regex the regular expression to match
+	 * @return this - for method chaining
+	 */
+	public Selection excludeRegex(String regex) {
+		excludes.add(regex(regex));
+		return this;
+	}
+	/***
+	 * Leaves out every worker with the passed tag.
+	 * @param tag the tag to match
+	 * @return this - for method chaining
+	 */
+	public Selection excludeTag(String tag) {
+		excludes.add(tag(tag));
+		return this;
+	}
+	/***
+	 * When true every worker a chosen worker waits on, directly or not, is chosen too.
+	 * @param upstream true to choose everything upstream of a chosen worker
+	 * @return this - for method chaining
+	 */
+	public Selection setUpstream(boolean upstream) {
+		this.upstream = upstream;
+		return this;
+	}
+	/***
+	 * Returns true if everything upstream of a chosen worker is chosen too.
+	 * @return the current value of upstream
+	 */
+	public boolean isUpstream() {
+		return upstream;
+	}
+	/***
+	 * When true every worker that waits on a chosen worker, directly or not, is chosen too.
+	 * @param downstream true to choose everything downstream of a chosen worker
+	 * @return this - for method chaining
+	 */
+	public Selection setDownstream(boolean downstream) {
+		this.downstream = downstream;
+		return this;
+	}
+	/***
+	 * Returns true if everything downstream of a chosen worker is chosen too.
+	 * @return the current value of downstream
+	 */
+	public boolean isDownstream() {
+		return downstream;
+	}
+
+	//A copy, so changing this after handing it to a WorkerPool doesn't change what the WorkerPool has already worked out
+	Selection copy() {
+		Selection output = new Selection();
+		output.includes.addAll(includes);
+		output.excludes.addAll(excludes);
+		output.all = all;
+		output.upstream = upstream;
+		output.downstream = downstream;
+		return output;
+	}
+
+	/*
+	 * Returns which of the workers in the plan (ids below plan.size()) are chosen. Pool stages are walked through, so upstream and downstream follow pool dependencies, but are never chosen themselves.
+	 */
+	boolean[] resolve(ExecutionPlan plan, Collection<String> notInAll) {
+		Set<String> notIn = new HashSet<>();
+		for(String aName : notInAll)
+			notIn.add(aName.toUpperCase());
+		int size = plan.size();
+		boolean[] chosen = new boolean[plan.nodeCount()];
+		boolean[] excluded = new boolean[size];
+		int[] seeds = new int[size];
+		int seedCount = 0;
+		for(int id = 0; id < size; id++) {
+			String aName = plan.getName(id);
+			String aPoolName = plan.getPoolName(id);
+			WorkerInterface aWorker = plan.getWorker(id);
+			boolean in = matches(includes, aName, aPoolName, aWorker) || (all && !notIn.contains(aName.toUpperCase()));
+			excluded[id] = matches(excludes, aName, aPoolName, aWorker);
+			if(in) {
+				chosen[id] = true;
+				seeds[seedCount++] = id;
+			}
+		}
+		if(upstream)
+			close(plan.parents(), chosen, seeds, seedCount);
+		if(downstream)
+			close(plan.children(), chosen, seeds, seedCount);
+		boolean[] output = new boolean[size];
+		for(int id = 0; id < size; id++)
+			output[id] = chosen[id] && !excluded[id];
+		return output;
+	}
+
+	//Chooses everything reachable from the seeds, each worker and constraint is visited at most once
+	private static void close(Csr edges, boolean[] chosen, int[] seeds, int seedCount) {
+		boolean[] visited = new boolean[chosen.length];
+		ArrayDeque<Integer> toVisit = new ArrayDeque<>();
+		for(int i = 0; i < seedCount; i++) {
+			visited[seeds[i]] = true;
+			toVisit.add(seeds[i]);
+		}
+		while(!toVisit.isEmpty()) {
+			int id = toVisit.poll();
+			for(int e = edges.offsets[id]; e < edges.offsets[id + 1]; e++) {
+				int next = edges.targets[e];
+				if(!visited[next]) {
+					visited[next] = true;
+					chosen[next] = true;
+					toVisit.add(next);
+				}
+			}
+		}
+	}
+
+	private static boolean matches(List<Matcher> matchers, String threadName, String poolName, WorkerInterface worker) {
+		for(Matcher aMatcher : matchers)
+			if(aMatcher.matches(threadName, poolName, worker))
+				return true;
+		return false;
+	}
+
+	private static Matcher glob(String glob) {
+		if(glob.indexOf('*') < 0 && glob.indexOf('?') < 0)
+			return (threadName, poolName, worker) -> threadName.equalsIgnoreCase(glob) || poolName.equalsIgnoreCase(glob);
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for(char c : glob.toCharArray()) {
+			if(c == '*' || c == '?') {
+				if(literal.length() > 0)
+					regex.append(Pattern.quote(literal.toString()));
+				literal.setLength(0);
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if(literal.length() > 0)
+			regex.append(Pattern.quote(literal.toString()));
+		Pattern pattern = Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+		return (threadName, poolName, worker) -> pattern.matcher(threadName).matches() || pattern.matcher(poolName).matches();
+	}
+
+	private static Matcher regex(String regex) {
+		Pattern pattern = Pattern.compile(regex);
+		return (threadName, poolName, worker) -> pattern.matcher(threadName).matches();
+	}
+
+	private static Matcher tag(String tag) {
+		return (threadName, poolName, worker) -> worker.getTags() != null && worker.getTags().contains(tag);
+	}
+
+	private interface Matcher {
+		boolean matches(String threadName, String poolName, WorkerInterface worker);
+	}
+}
@@ -1,5 +0,0 @@
-package org.thedryden.workmanager;
-
-class SignalObj {
-
-}
@@ -0,0 +1,80 @@
+package org.thedryden.workmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * How many workers of a pool are in each status, kept up to date by the workers themselves as their status changes, so the status of a pool can be read without walking its workers.
+ * Counts are striped (LongAdder), so workers finishing at the same time don't contend. A move counts the new status before uncounting the old one, so while a worker is moving it is briefly counted twice, never missed.
+ * Workers that don't extend Worker can't report their changes, so those few are still checked one by one.
+ * @author Matthew Dryden
+ *
+ */
+class StatusCounts {
+	private static final Status[] STATUSES = Status.values();
+
+	private final List<WorkerInterface> source;
+	private final int size;
+	private final LongAdder[] counts;
+	private final List<WorkerInterface> untracked;
+
+	/*
+	 * Counts the workers in the passed pool, and from then on each of them reports its changes here. Only built while none of them are running.
+	 */
+	StatusCounts(List<WorkerInterface> pool) {
+		source = pool;
+		size = pool.size();
+		counts = new LongAdder[STATUSES.length];
+		for(int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+		untracked = new ArrayList<>();
+		for(WorkerInterface aWorker : pool) {
+			if(aWorker instanceof Worker)
+				((Worker) aWorker).setStatusCounts(this);
+			else
+				untracked.add(aWorker);
+		}
+	}
+
+	//True if this still counts the passed pool, a cheap check that catches workers being added or removed
+	boolean isCurrent(List<WorkerInterface> pool) {
+		return pool == source && pool.size() == size;
+	}
+
+	void add(Status aStatus) {
+		counts[index(aStatus)].increment();
+	}
+
+	void moved(Status from, Status to) {
+		counts[index(to)].increment();
+		counts[index(from)].decrement();
+	}
+
+	/***
+	 * Returns the status with the lowest severity that any worker is in, EMPTY if there are no workers.
+	 */
+	Status getStatus() {
+		Status output = Status.EMPTY;
+		int min = Integer.MAX_VALUE;
+		for(Status aStatus : StatusMeta.bySeverity()) {
+			if(counts[aStatus.ordinal()].sum() > 0) {
+				output = aStatus;
+				min = StatusMeta.getSeverity(aStatus);
+				break;
+			}
+		}
+		for(WorkerInterface aWorker : untracked) {
+			Status aStatus = aWorker.getStatus() == null ? Status.EMPTY : aWorker.getStatus();
+			if(StatusMeta.getSeverity(aStatus) < min) {
+				min = StatusMeta.getSeverity(aStatus);
+				output = aStatus;
+			}
+		}
+		return output;
+	}
+
+	private static int index(Status aStatus) {
+		return aStatus == null ? Status.EMPTY.ordinal() : aStatus.ordinal();
+	}
+}
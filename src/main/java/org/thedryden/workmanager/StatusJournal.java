@@ -0,0 +1,252 @@
+package org.thedryden.workmanager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/***
+ * An append only, memory mapped, file of every status change of every worker, so a run that dies part way through (a crash, a kill, or exitOnError) can be picked up where it stopped with WorkerPool.resume.
+ * Recording a change is a copy into the mapped file, so once recorded it survives the JVM dying. Surviving the machine dying needs it forced to disk, which a background thread does for every change made in the last flush interval at once (group commit), and which sync does straight away.
+ * Each record is its length, a CRC32, the time, the status, and the thread name, so a record torn by a crash is spotted and everything from it on ignored. Records are never rewritten, the latest for a worker wins.
+ * @author Matthew Dryden
+ *
+ */
+public class StatusJournal implements Closeable {
+	/***
+	 * Default number of milliseconds between forcing recorded changes to disk
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLISECONDS = 20;
+	private static final Status[] STATUSES = Status.values();
+	private static final int HEADER = 8;
+	private static final int INITIAL_SIZE = 1 << 20;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final long flushIntervalMilliseconds;
+	private final Map<String,Status> statuses;
+	private final CRC32 crc;
+	private volatile MappedByteBuffer buffer;
+	private int position;
+	private volatile boolean dirty;
+	private volatile boolean closed;
+	private volatile IOException error;
+	private final Thread flusher;
+
+	/***
+	 * Opens the journal in the passed file, creating it if it doesn't exist, and reads what is already in it (see getStatuses).
+	 * @param path the file to keep the journal in
+	 * @throws IOException thrown if the file can't be opened or mapped
+	 */
+	public StatusJournal(Path path) throws IOException {
+		this(path, DEFAULT_FLUSH_INTERVAL_MILLISECONDS);
+	}
+	/***
+	 * Opens the journal in the passed file, creating it if it doesn't exist, and reads what is already in it (see getStatuses).
+	 * @param path the path of the file to keep the journal in
+	 * @throws IOException thrown if the file can't be opened or mapped
+	 */
+	public StatusJournal(String path) throws IOException {
+		this(Paths.get(path));
+	}
+	/***
+	 * Opens the journal in the passed file, creating it if it doesn't exist, and reads what is already in it (see getStatuses).
+	 * @param path the file to keep the journal in
+	 * @param flushIntervalMilliseconds how often changes are forced to disk, 0 to force every change as it is recorded, which is much slower
+	 * @throws IOException thrown if the file can't be opened or mapped
+	 */
+	public StatusJournal(Path path, long flushIntervalMilliseconds) throws IOException {
+		this.path = path;
+		this.flushIntervalMilliseconds = flushIntervalMilliseconds;
+		this.statuses = new ConcurrentHashMap<>();
+		this.crc = new CRC32();
+		this.dirty = false;
+		this.closed = false;
+		this.error = null;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+		position = replay();
+		if(flushIntervalMilliseconds > 0) {
+			flusher = new Thread(this::flushLoop);
+			flusher.setName("StatusJournal " + path.getFileName());
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+	/***
+	 * Returns the file the journal is kept in.
+	 * @return the file the journal is kept in
+	 */
+	public Path getPath() {
+		return path;
+	}
+	/***
+	 * Returns the latest status recorded for each worker, by thread name, both from before the journal was opened and since. Changes that couldn't be written, because the journal was closed or had failed, aren't included.
+	 * @return an unmodifiable view of the latest status of each worker
+	 */
+	public Map<String,Status> getStatuses() {
+		return Collections.unmodifiableMap(statuses);
+	}
+	/***
+	 * Returns the latest status recorded for the passed worker, or null if there is none.
+	 * @param threadName the thread name of the worker
+	 * @return the latest status recorded for the worker, or null
+	 */
+	public Status getStatus(String threadName) {
+		return statuses.get(threadName);
+	}
+	/***
+	 * Returns the error that stopped the journal recording, or null if nothing has gone wrong. Once recording fails nothing more is recorded, so the run can only be resumed from before the error.
+	 * @return the error, or null
+	 */
+	public IOException getError() {
+		return error;
+	}
+	/***
+	 * Records a change of status. Called by the WorkerPool for every worker it runs, you only need to call this for changes the WorkerPool can't see.
+	 * @param threadName the thread name of the worker
+	 * @param status its new status
+	 */
+	public void record(String threadName, Status status) {
+		if(status == null)
+			return;
+		byte[] name = threadName.getBytes(StandardCharsets.UTF_8);
+		synchronized(this) {
+			if(closed || error != null)
+				return;
+			try {
+				int length = 9 + name.length;
+				ensureRoom(HEADER + length);
+				ByteBuffer record = ByteBuffer.allocate(length);
+				record.putLong(System.currentTimeMillis()).put((byte) status.ordinal()).put(name);
+				crc.reset();
+				crc.update(record.array(), 0, length);
+				//The length goes in last, so until the record is whole it reads as the end of the journal
+				buffer.putInt(position + 4, (int) crc.getValue());
+				ByteBuffer body = buffer.duplicate();
+				body.position(position + HEADER);
+				body.put(record.array(), 0, length);
+				buffer.putInt(position, length);
+				position += HEADER + length;
+				//Only once it is in the file, so getStatuses never reports a change a restart would lose
+				statuses.put(threadName, status);
+				dirty = true;
+				if(flusher == null)
+					force();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+	}
+	/***
+	 * Forces every change recorded so far to disk.
+	 * @throws IOException thrown if recording has failed (see getError)
+	 */
+	public void sync() throws IOException {
+		force();
+		if(error != null)
+			throw error;
+	}
+	/***
+	 * Forgets every recorded status, so the next run starts from scratch. Call it once a run has finished, if there is nothing to resume.
+	 */
+	public synchronized void clear() {
+		for(int i = 0; i < position; i++)
+			buffer.put(i, (byte) 0);
+		position = 0;
+		statuses.clear();
+		dirty = true;
+	}
+	/***
+	 * Forces everything to disk and closes the journal. Nothing more is recorded.
+	 * @throws IOException thrown if the journal can't be forced to disk or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			if(closed)
+				return;
+			closed = true;
+		}
+		if(flusher != null)
+			flusher.interrupt();
+		buffer.force();
+		channel.close();
+	}
+
+	//Reads every whole record, and returns where the next one goes. Anything after the last whole record is torn, so it is wiped.
+	private int replay() {
+		int at = 0;
+		int limit = buffer.capacity();
+		while(at + HEADER <= limit) {
+			int length = buffer.getInt(at);
+			if(length <= 9 || at + HEADER + length > limit)
+				break;
+			byte[] record = new byte[length];
+			ByteBuffer body = buffer.duplicate();
+			body.position(at + HEADER);
+			body.get(record);
+			crc.reset();
+			crc.update(record, 0, length);
+			int ordinal = record[8];
+			if((int) crc.getValue() != buffer.getInt(at + 4) || ordinal < 0 || ordinal >= STATUSES.length)
+				break;
+			statuses.put(new String(record, 9, length - 9, StandardCharsets.UTF_8), STATUSES[ordinal]);
+			at += HEADER + length;
+		}
+		if(at + HEADER <= limit && (buffer.getInt(at) != 0 || buffer.getInt(at + 4) != 0))
+			for(int i = at; i < limit; i++)
+				buffer.put(i, (byte) 0);
+		return at;
+	}
+
+	//Only called while holding the lock
+	private void ensureRoom(int needed) throws IOException {
+		//Always leaves room for an empty header after the last record, which marks the end
+		long wanted = (long) position + needed + HEADER;
+		if(wanted <= buffer.capacity())
+			return;
+		long size = buffer.capacity();
+		while(size < wanted)
+			size *= 2;
+		if(size > Integer.MAX_VALUE)
+			throw new IOException("Status journal " + path + " is full");
+		buffer.force();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	private void force() {
+		if(!dirty || closed)
+			return;
+		dirty = false;
+		buffer.force();
+	}
+
+	//Group commit: everything recorded since the last pass is forced to disk together
+	private void flushLoop() {
+		while(!closed) {
+			try {
+				Thread.sleep(flushIntervalMilliseconds);
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				force();
+			} catch (RuntimeException e) {
+				//The channel was closed under us, close has forced everything anyway
+				return;
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.thedryden.workmanager;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.Map;
 /***
  * Collection of meta data about statuses used by the WorkerPool class
@@ -15,13 +16,15 @@ public final class StatusMeta {
 	
 	static
     { 
-		STATUS_SEVERITY = new HashMap<>(); 
+		STATUS_SEVERITY = new EnumMap<>(Status.class); 
 		STATUS_SEVERITY.put(Status.FAILED,0);
-		STATUS_SEVERITY.put(Status.PRECEDENCE_FAILED,1);
-		STATUS_SEVERITY.put(Status.PENDING,2);
-		STATUS_SEVERITY.put(Status.RUNNING,4);
-		STATUS_SEVERITY.put(Status.SUCCESS,5);
-		STATUS_SEVERITY.put(Status.EMPTY,5);
+		STATUS_SEVERITY.put(Status.TIMED_OUT,1);
+		STATUS_SEVERITY.put(Status.PRECEDENCE_FAILED,2);
+		STATUS_SEVERITY.put(Status.CANCELLED,3);
+		STATUS_SEVERITY.put(Status.PENDING,4);
+		STATUS_SEVERITY.put(Status.RUNNING,5);
+		STATUS_SEVERITY.put(Status.SUCCESS,6);
+		STATUS_SEVERITY.put(Status.EMPTY,6);
     }
 	/***
 	 * Takes a status and returns that statuses severity. When deciding the outcome of a pool, status severity is used to determine, which status wins. Lower is higher priority.
@@ -32,6 +35,21 @@ public final class StatusMeta {
 		return STATUS_SEVERITY.get(aStatus);
 	}
 	
+	/***
+	 * Every status, lowest severity first, so the first status with any workers in it is the status of the pool.
+	 */
+	private final static Status[] BY_SEVERITY;
+	
+	static
+	{
+		BY_SEVERITY = Status.values();
+		Arrays.sort(BY_SEVERITY, (a, b) -> Integer.compare(STATUS_SEVERITY.get(a), STATUS_SEVERITY.get(b)));
+	}
+	
+	static Status[] bySeverity() {
+		return BY_SEVERITY;
+	}
+	
 	/***
 	 * If true than the status is considered open, when false it is closed, and should never change.
 	 */
@@ -39,9 +57,11 @@ public final class StatusMeta {
 	
 	static
     { 
-		STATUS_OPEN = new HashMap<>(); 
+		STATUS_OPEN = new EnumMap<>(Status.class); 
 		STATUS_OPEN.put(Status.FAILED,false);
 		STATUS_OPEN.put(Status.PRECEDENCE_FAILED,false);
+		STATUS_OPEN.put(Status.TIMED_OUT,false);
+		STATUS_OPEN.put(Status.CANCELLED,false);
 		STATUS_OPEN.put(Status.PENDING,true);
 		STATUS_OPEN.put(Status.RUNNING,true);
 		STATUS_OPEN.put(Status.SUCCESS,false);
@@ -63,9 +83,11 @@ public final class StatusMeta {
 	
 	static
     { 
-		STATUS_FAILED = new HashMap<>(); 
+		STATUS_FAILED = new EnumMap<>(Status.class); 
 		STATUS_FAILED.put(Status.FAILED,true);
 		STATUS_FAILED.put(Status.PRECEDENCE_FAILED,true);
+		STATUS_FAILED.put(Status.TIMED_OUT,true);
+		STATUS_FAILED.put(Status.CANCELLED,true);
 		STATUS_FAILED.put(Status.PENDING,false);
 		STATUS_FAILED.put(Status.RUNNING,false);
 		STATUS_FAILED.put(Status.SUCCESS,false);
@@ -2,6 +2,7 @@ package org.thedryden.workmanager;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,12 +13,27 @@ import org.slf4j.LoggerFactory;
  *
  */
 public abstract class Worker implements WorkerInterface {
+	private static final AtomicReferenceFieldUpdater<Worker,Status> STATUS = AtomicReferenceFieldUpdater.newUpdater(Worker.class, Status.class, "status");
 	protected Set<String> precedenceConstraint;
 	protected int retryAttempts;
 	protected int retryWaitSeconds;
+	protected long expectedMilliseconds;
+	protected long timeoutMilliseconds;
+	protected int weight;
+	protected Set<String> resourceTags;
+	protected Set<String> tags;
 	protected String threadName;
 	protected Logger logger;
-	protected Status status;
+	//Change with setStatus rather than directly, so the status of the pool stays right
+	protected volatile Status status;
+	protected RetryPolicy retryPolicy;
+	private int retry;
+	private Timer timer;
+	private volatile PoolRun run;
+	private volatile int runId;
+	private volatile CancellationToken cancellationToken;
+	private volatile StatusCounts statusCounts;
+	private volatile StatusJournal statusJournal;
 	
 	/***
 	 * Creates a new worker with no precedenceConstraint. If you want to have a precedenceConstraint or a threadName that is not the default either overwrite this method, but still call super, or set those values when adding this to a worker pool.
@@ -26,9 +42,16 @@ public abstract class Worker implements WorkerInterface {
 		precedenceConstraint = null;
 		retryAttempts = 0;
 		retryWaitSeconds = 0;
+		retryPolicy = null;
+		expectedMilliseconds = 0;
+		timeoutMilliseconds = 0;
+		weight = 1;
+		resourceTags = new HashSet<>();
+		tags = new HashSet<>();
 		threadName = this.getClass().getSimpleName();
 		logger = LoggerFactory.getLogger(this.getThreadName());
 		status = Status.PENDING;
+		cancellationToken = new CancellationToken();
 	}
 	/***
 	 * Used to set the precedenceConstraint
@@ -62,6 +85,108 @@ public abstract class Worker implements WorkerInterface {
 	public void setRetry(int retryAttempts, int retryWaitSeconds) {
 		this.retryAttempts = retryAttempts;
 		this.retryWaitSeconds = retryWaitSeconds;
+		this.retryPolicy = null;
+	}
+	/***
+	 * Returns how long this worker waits before each retry. Unless one has been set this is RetryPolicy.fixed(retryWaitSeconds).
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy == null ? RetryPolicy.fixed(retryWaitSeconds) : retryPolicy;
+	}
+	/***
+	 * Sets how long this worker waits before each retry, for instance exponential backoff with jitter. The number of retries is still set with setRetry.
+	 * @param retryPolicy how long to wait before each retry, null to go back to a fixed wait of retryWaitSeconds
+	 * @return this - for method chaining
+	 */
+	public Worker setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		return this;
+	}
+	/***
+	 * Returns the hint of how long this worker is expected to run, in milliseconds. 0 means no hint.
+	 */
+	public long getExpectedMilliseconds() {
+		return expectedMilliseconds;
+	}
+	/***
+	 * Sets a hint of how long this worker is expected to run, in milliseconds. Workers that gate the longest chains are started first when more workers are ready than there are threads.
+	 * @param expectedMilliseconds how long this worker is expected to run
+	 */
+	public void setExpectedMilliseconds(long expectedMilliseconds) {
+		this.expectedMilliseconds = expectedMilliseconds;
+	}
+	/***
+	 * Returns how long this worker may run, in milliseconds, before it is cancelled and marked TIMED_OUT. 0 means no timeout.
+	 */
+	public long getTimeoutMilliseconds() {
+		return timeoutMilliseconds;
+	}
+	/***
+	 * Sets how long this worker may run, in milliseconds, when run by a WorkerPool. The time counts from when it starts, through any retries, and once it is up the worker is cancelled (see getCancellationToken), marked TIMED_OUT, and anything waiting on it fails.
+	 * Its slots are given back straight away, even if worker never checks for cancellation and keeps its thread.
+	 * @param timeoutMilliseconds how long this worker may run, 0 for no timeout
+	 * @return this - for method chaining
+	 */
+	public Worker setTimeoutMilliseconds(long timeoutMilliseconds) {
+		this.timeoutMilliseconds = timeoutMilliseconds;
+		return this;
+	}
+	/***
+	 * Returns the token that tells this worker it should stop, check it now and then from worker if it runs long without blocking. It is never cancelled when this worker is run on its own.
+	 * @return the token for the current run of this worker
+	 */
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+	/***
+	 * Shorthand for getCancellationToken().isCancelled(). A worker that stops early because of this can simply return, it is marked CANCELLED (or TIMED_OUT) rather than SUCCESS.
+	 * @return true once this worker should stop
+	 */
+	protected boolean isCancelled() {
+		return cancellationToken.isCancelled();
+	}
+	/***
+	 * Returns the number of slots of maxThreadCount this worker takes while it runs.
+	 */
+	public int getWeight() {
+		return weight;
+	}
+	/***
+	 * Sets the number of slots of maxThreadCount this worker takes while it runs, for instance 8 for a worker that runs 8 threads of its own. A weight more than maxThreadCount takes every slot, so the worker runs on its own.
+	 * @param weight the number of slots this worker takes while it runs, at least 1
+	 */
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+	/***
+	 * Returns the resource tags of this worker.
+	 */
+	public Set<String> getResourceTags() {
+		return resourceTags;
+	}
+	/***
+	 * Adds a resource tag, such as "db" or "s3", to this worker. While every permit for one of its tags (set with WorkerPool.setResourceLimit) is in use this worker waits, and other ready workers are started instead.
+	 * @param resourceTag the name of a resource this worker uses
+	 * @return this - for method chaining
+	 */
+	public Worker addResourceTag(String resourceTag) {
+		resourceTags.add(resourceTag);
+		return this;
+	}
+	/***
+	 * Returns the tags of this worker.
+	 */
+	public Set<String> getTags() {
+		return tags;
+	}
+	/***
+	 * Adds a tag, such as "nightly", to this worker, so it can be chosen to run with Selection.includeTag, or a tag: run arg.
+	 * @param tag the tag to add
+	 * @return this - for method chaining
+	 */
+	public Worker addTag(String tag) {
+		tags.add(tag);
+		return this;
 	}
 	/***
 	 * Used to set the threadName to something other than the default: this.getClass().getSimpleName()
@@ -101,39 +226,164 @@ public abstract class Worker implements WorkerInterface {
 	 * Sets the current status of this worker. You should never need to call this manually, this is designed to be used by WorkerPool class.
 	 */
 	public void setStatus(Status status) {
-		this.status = status;
+		Status previous = STATUS.getAndSet(this, status);
+		counted(previous, status);
+	}
+	/***
+	 * Sets the status of this worker to update, but only if it is currently expect.
+	 * @param expect the status this worker must be in
+	 * @param update the new status
+	 * @return true if the status was changed
+	 */
+	protected boolean compareAndSetStatus(Status expect, Status update) {
+		if(!STATUS.compareAndSet(this, expect, update))
+			return false;
+		counted(expect, update);
+		return true;
+	}
+	private void counted(Status previous, Status status) {
+		if(previous == status)
+			return;
+		StatusCounts counts = statusCounts;
+		if(counts != null)
+			counts.moved(previous, status);
+		StatusJournal journal = statusJournal;
+		if(journal != null)
+			journal.record(getThreadName(), status);
+	}
+	//null to stop recording
+	void setStatusJournal(StatusJournal statusJournal) {
+		this.statusJournal = statusJournal;
+	}
+	//Called while this worker isn't running, so no change can be missed
+	void setStatusCounts(StatusCounts statusCounts) {
+		this.statusCounts = statusCounts;
+		statusCounts.add(status);
+	}
+	/***
+	 * Adds a new worker to the pool run this worker is part of. Can only be called while this worker is running (including from subtasks a RecursiveWorker forked), for instance to start one worker per partition once the partitions are known.
+	 * The new worker starts as soon as there is a free thread, it doesn't wait for this worker to finish, and its precedence constraints are ignored. It can spawn workers of its own.
+	 * Anything waiting on this worker also waits for every worker it spawned (and everything they spawned) to finish, and if any of them fail, this worker fails.
+	 * @param child the worker to add
+	 * @return this - for method chaining
+	 * @throws IllegalStateException thrown if this worker is not currently running in a WorkerPool
+	 */
+	public Worker spawn(WorkerInterface child) throws IllegalStateException {
+		PoolRun current = run;
+		if(current == null)
+			throw new IllegalStateException("Worker " + getThreadName() + " is not running in a WorkerPool, so it can't spawn workers");
+		current.spawn(runId, child);
+		return this;
+	}
+	/***
+	 * Called by run for each attempt. By default this just calls worker, subclasses can override it to do work around each attempt, RecursiveWorker uses it to wait for the subtasks worker forked.
+	 * @throws Exception any exception thrown by worker, which fails the attempt.
+	 */
+	protected void callWorker() throws Exception {
+		worker();
+	}
+	//Lets the pool run know an attempt failed and another is coming
+	void retrying(int attempt, Throwable error) {
+		PoolRun current = run;
+		if(current != null)
+			current.retrying(runId, attempt, error);
+	}
+	void setRun(PoolRun run, int runId) {
+		this.runId = runId;
+		this.run = run;
+	}
+	void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
 	}
 	/***
 	 * This method is designed to call worker class, while managing both the classes status and error handling and basic logging / timing.
+	 * When run by a WorkerPool the worker runs one attempt at a time, and between attempts it waits on a timer without holding a thread or a slot. Run on its own it sleeps between attempts.
 	 */
 	public void run() {
-		if(status.equals(Status.PENDING)) {
-			Timer timer = new Timer().start();
-			LoggingTemplate.log(logger, LoggingTemplate.getWorkerStartLevel(), LoggingTemplate.getWorkerStart(), this.getThreadName());
-			status = Status.RUNNING;
-			int retry = 0;
-			boolean done = false;
-			while(!done){
-				try {
-					worker();
-					status = Status.SUCCESS;
-					done = true;
-				} catch (Exception e) {
-					retry++;
-					if(retry <= retryAttempts) {
-						LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getWorkerError(), getThreadName(), e);
-						LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getRetry(), "Worker", getThreadName(), retryAttempts, retry, retryWaitSeconds);
-						try {Thread.sleep(retryWaitSeconds * 1000);} 
-						catch (InterruptedException ie) {}
-					} else {
-						LoggingTemplate.log(logger, LoggingTemplate.getWorkerErrorLevel(), LoggingTemplate.getWorkerError(), getThreadName(), e);
-						status = Status.FAILED;
-						break;
-					}
-				}
-			}
-			timer.stop();
-			LoggingTemplate.log(logger, LoggingTemplate.getWorkerCompleteLevel(), LoggingTemplate.getWorkerComplete(), this.getThreadName(), status, LoggingTemplate.applyTimerToString( timer ));
+		if(!begin())
+			return;
+		long delay;
+		while((delay = attempt()) >= 0) {
+			try {Thread.sleep(delay);} 
+			catch (InterruptedException ie) {}
+		}
+	}
+	//Starts a run, returns false if the worker isn't pending so there is nothing to run
+	boolean begin() {
+		if(!compareAndSetStatus(Status.PENDING, Status.RUNNING))
+			return false;
+		timer = new Timer().start();
+		LoggingTemplate.log(logger, LoggingTemplate.getWorkerStartLevel(), LoggingTemplate.getWorkerStart(), this.getThreadName());
+		retry = 0;
+		PoolRun current = run;
+		if(current != null)
+			current.started();
+		return true;
+	}
+	//Runs one attempt, returns the milliseconds to wait before the next, or -1 once the worker is done
+	long attempt() {
+		//Each run by a WorkerPool gets a new token, so it tells this attempt apart from any later run of this worker
+		CancellationToken token = cancellationToken;
+		try {
+			callWorker();
+			//Returning once cancelled, even without an error, doesn't mean the work got done
+			if(settle(token, stoppedStatus(token, Status.SUCCESS)))
+				end();
+			return -1;
+		} catch (Exception e) {
+			return failed(e, token);
+		}
+	}
+	/*
+	 * Sets the status an attempt ended with, returns false (and changes nothing) if the attempt was abandoned: it timed out and the WorkerPool has already finished the worker, or even started it again.
+	 */
+	boolean settle(CancellationToken token, Status aStatus) {
+		return token == cancellationToken && compareAndSetStatus(Status.RUNNING, aStatus);
+	}
+	/*
+	 * Called after a failed attempt: returns the milliseconds to wait before retrying, or fails the worker and returns -1 if it has no retries left, or the WorkerPool's retry budget is used up.
+	 */
+	long failed(Throwable e, CancellationToken token) {
+		//An abandoned attempt has nothing left to decide, the error is only logged
+		if(token != cancellationToken || status != Status.RUNNING) {
+			LoggingTemplate.log(logger, LoggingTemplate.getWorkerErrorLevel(), LoggingTemplate.getWorkerError(), getThreadName(), e);
+			return -1;
+		}
+		retry++;
+		boolean retrying = retry <= retryAttempts && !token.isCancelled();
+		PoolRun current = run;
+		if(retrying && current != null && !current.tryRetry()) {
+			LoggingTemplate.log(logger, LoggingTemplate.getRetryBudgetExhaustedLevel(), LoggingTemplate.getRetryBudgetExhausted(), "Worker", getThreadName());
+			retrying = false;
 		}
+		if(!retrying) {
+			LoggingTemplate.log(logger, LoggingTemplate.getWorkerErrorLevel(), LoggingTemplate.getWorkerError(), getThreadName(), e);
+			if(settle(token, stoppedStatus(token, Status.FAILED)))
+				end();
+			return -1;
+		}
+		long delay = getRetryPolicy().getDelayMilliseconds(retry);
+		LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getWorkerError(), getThreadName(), e);
+		LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getRetry(), "Worker", getThreadName(), retryAttempts, retry, delay / 1_000.0);
+		retrying(retry, e);
+		return delay;
+	}
+	//Fails a worker that was cancelled while it waited to retry
+	void giveUp() {
+		setStatus(stoppedStatus(Status.FAILED));
+		end();
+	}
+	//A worker that stopped because it was cancelled failed because of something else, so isn't marked FAILED itself
+	Status stoppedStatus(Status otherwise) {
+		return stoppedStatus(cancellationToken, otherwise);
+	}
+	static Status stoppedStatus(CancellationToken token, Status otherwise) {
+		if(token.isTimedOut())
+			return Status.TIMED_OUT;
+		return token.isCancelled() ? Status.CANCELLED : otherwise;
+	}
+	void end() {
+		timer.stop();
+		LoggingTemplate.log(logger, LoggingTemplate.getWorkerCompleteLevel(), LoggingTemplate.getWorkerComplete(), this.getThreadName(), status, LoggingTemplate.applyTimerToString( timer ));
 	}
 }
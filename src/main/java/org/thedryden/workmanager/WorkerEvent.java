@@ -0,0 +1,99 @@
+package org.thedryden.workmanager;
+
+/***
+ * A change in the state of a worker or a pool, published by a WorkerPool's EventPublisher as it happens. Events are immutable.
+ * <ul>
+ * <li>WORKER_READY: every parent of the worker has finished, it will start as soon as there is room</li>
+ * <li>WORKER_STARTED: the worker has been handed a thread, which happens again for each retry after the worker waited for it without one</li>
+ * <li>WORKER_RETRYING: an attempt failed and the worker will try again, attempt is the attempt that failed and error is why</li>
+ * <li>WORKER_FINISHED: the worker is done, status is how it ended and milliseconds how long it ran</li>
+ * <li>POOL_FINISHED: every worker in the pool is done, threadName is null, status is the pool's and milliseconds how long the pool ran</li>
+ * <li>WORKER_SKIPPED: the worker was up to date (see WorkerInterface.getInputFingerprint), so it was marked SUCCESS without running</li>
+ * </ul>
+ * @author Matthew Dryden
+ *
+ */
+public class WorkerEvent {
+	private final EventType type;
+	private final String poolName;
+	private final String threadName;
+	private final Status status;
+	private final long milliseconds;
+	private final int attempt;
+	private final Throwable error;
+	private final long timestamp;
+
+	WorkerEvent(EventType type, String poolName, String threadName, Status status, long milliseconds, int attempt, Throwable error) {
+		this.type = type;
+		this.poolName = poolName;
+		this.threadName = threadName;
+		this.status = status;
+		this.milliseconds = milliseconds;
+		this.attempt = attempt;
+		this.error = error;
+		this.timestamp = System.currentTimeMillis();
+	}
+	/***
+	 * Returns what kind of event this is.
+	 */
+	public EventType getType() {
+		return type;
+	}
+	/***
+	 * Returns the name of the pool the worker is in, or that finished.
+	 */
+	public String getPoolName() {
+		return poolName;
+	}
+	/***
+	 * Returns the thread name of the worker, or null for POOL_FINISHED.
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+	/***
+	 * Returns the status of the worker (or pool) when the event happened.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+	/***
+	 * Returns how long the worker (or pool) ran for, in milliseconds, for WORKER_FINISHED and POOL_FINISHED. 0 for every other event.
+	 */
+	public long getMilliseconds() {
+		return milliseconds;
+	}
+	/***
+	 * Returns the attempt that failed for WORKER_RETRYING, starting at 1. 0 for every other event.
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+	/***
+	 * Returns why the attempt failed for WORKER_RETRYING, null for every other event.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+	/***
+	 * Returns when the event happened, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	@Override
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		output.append(type).append(" Pool: ").append(poolName);
+		if(threadName != null)
+			output.append(" Worker: ").append(threadName);
+		output.append(" Status: ").append(status);
+		if(milliseconds > 0)
+			output.append(" Milliseconds: ").append(milliseconds);
+		if(attempt > 0)
+			output.append(" Attempt: ").append(attempt);
+		if(error != null)
+			output.append(" Error: ").append(error);
+		return output.toString();
+	}
+}
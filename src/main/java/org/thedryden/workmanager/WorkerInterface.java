@@ -1,5 +1,6 @@
 package org.thedryden.workmanager;
 
+import java.util.Collections;
 import java.util.Set;
 
 public interface WorkerInterface {
@@ -14,4 +15,42 @@ public interface WorkerInterface {
 	public void setRetry(int retryAttempts, int retryWaitSeconds);
 	public void worker() throws Exception;
 	public void run();
+	/***
+	 * A hint of how long this worker is expected to run, in milliseconds, used to start the workers on the longest remaining path first. 0 (the default) means no hint.
+	 * A duration recorded by the WorkerPool on an earlier run is used instead when there is one.
+	 */
+	public default long getExpectedMilliseconds() {
+		return 0;
+	}
+	/***
+	 * How many slots of the WorkerPool's maxThreadCount this worker takes while it runs, 1 (the default) for a worker that keeps one thread busy. A worker heavier than maxThreadCount takes every slot and runs on its own.
+	 */
+	public default int getWeight() {
+		return 1;
+	}
+	/***
+	 * How long this worker may run, in milliseconds, before the WorkerPool cancels it and marks it TIMED_OUT. 0 (the default) means no timeout.
+	 */
+	public default long getTimeoutMilliseconds() {
+		return 0;
+	}
+	/***
+	 * The resources this worker uses, such as "db" or "s3". A worker only starts while every one of its tags that has a limit (set with WorkerPool.setResourceLimit) has a free permit. Empty (the default) or null means no resources.
+	 */
+	public default Set<String> getResourceTags() {
+		return Collections.emptySet();
+	}
+	/***
+	 * Tags used to choose which workers run, such as "nightly" or "finance", see Selection.includeTag. Empty (the default) or null means no tags.
+	 */
+	public default Set<String> getTags() {
+		return Collections.emptySet();
+	}
+	/***
+	 * A fingerprint of everything this worker reads, for instance built with Fingerprint from the files it loads and the parameters it was given. When the WorkerPool has a FingerprintStore, a worker whose fingerprint, and those of every worker it waits on, are the same as the last time it succeeded is up to date: it is marked SUCCESS without running, and the workers waiting on it are released straight away.
+	 * null (the default) means the worker always runs, and so do the workers downstream of it that have fingerprints. Throwing is the same as returning null.
+	 */
+	public default String getInputFingerprint() throws Exception {
+		return null;
+	}
 }
@@ -1,12 +1,22 @@
 package org.thedryden.workmanager;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +44,13 @@ public class WorkerPool {
 	
 	protected List<String> keys;
 	protected Map<String,List<WorkerInterface>> pools;
+	//Thread name to worker, the first in pool order if a name is used twice, so getWorker doesn't have to search every pool. null until it is next needed
+	protected volatile Map<String,WorkerInterface> workerIndex;
+	//null when every worker runs. Otherwise what it chose from selectedPlan: which ids, and the chosen workers of each pool in order
+	protected Selection selection;
+	private ExecutionPlan selectedPlan;
+	private boolean[] selected;
+	private volatile Map<String,List<WorkerInterface>> selectedPools;
 	protected Map<String,Integer> poolRetry;
 	protected Map<String,Integer> poolRetryWaitSeconds;
 	protected Map<String,Boolean> poolRetryRerunSuccess;
@@ -42,13 +59,33 @@ public class WorkerPool {
 	protected List<String> notInAll;
 	protected Map<String,Long> lastMsg;
 	protected Map<String,Long> lastWarn;
-	protected Integer threadCount;
+	protected Admission admission;
+	protected ExecutionBackend executionBackend;
+	protected ForkJoinPool forkJoinPool;
+	protected boolean forkJoinPoolOwned;
+	protected ScheduledExecutorService scheduler;
+	protected Dispatcher dispatcher;
+	protected ExecutionPlan plan;
+	protected boolean planDirty;
+	protected Map<String,Set<String>> poolDependencies;
+	protected Map<String,Long> workerDurations;
+	protected ResourcePermits resourcePermits;
+	protected AdaptiveConcurrency adaptiveConcurrency;
+	protected EventPublisher eventPublisher;
+	protected RetryBudget retryBudget;
+	protected FingerprintStore fingerprintStore;
+	protected StatusJournal statusJournal;
+	protected Map<String,RetryPolicy> poolRetryPolicy;
+	protected Map<String,Long> poolTimeout;
+	protected Map<String,StatusCounts> poolStatus;
+	protected AtomicInteger abandonedThreads;
+	protected Set<WorkerInterface> abandonedWorkers;
 	
 	/***
 	 * Default maximum number of threads running at one time
 	 */
 	public static final int DEFAULT_MAX_THREAD_COUNT = 3;
-	protected int maxThreadCount;
+	protected volatile int maxThreadCount;
 	
 	/***
 	 * Default value for stopAllRunningOnFailure.
@@ -56,6 +93,12 @@ public class WorkerPool {
 	public static final boolean DEFAULT_NO_NEW_THREADS_ON_FAILURE = false;
 	protected boolean noNewThreadsOnFailure;
 	
+	/***
+	 * Default value for cancel running on failure
+	 */
+	public static final boolean DEFAULT_CANCEL_RUNNING_ON_FAILURE = false;
+	protected boolean cancelRunningOnFailure;
+	
 	/***
 	 * Default value for start next pool on failure
 	 */
@@ -79,6 +122,24 @@ public class WorkerPool {
 	public static final boolean DEFAULT_EXIT_ON_ERROR = true;
 	protected boolean exitOnError;
 	
+	/***
+	 * Default value for global DAG
+	 */
+	public static final boolean DEFAULT_GLOBAL_DAG = false;
+	protected boolean globalDag;
+	
+	/***
+	 * Default value for critical path first
+	 */
+	public static final boolean DEFAULT_CRITICAL_PATH_FIRST = true;
+	protected boolean criticalPathFirst;
+	
+	/***
+	 * Default number of lighter workers that can start ahead of a heavier worker waiting for slots
+	 */
+	public static final int DEFAULT_MAX_OVERTAKES = 16;
+	protected int maxOvertakes;
+	
 	private String lastPoolKey = null;
 	private WorkerInterface lastWorker = null;
 	/***
@@ -98,32 +159,127 @@ public class WorkerPool {
 			this.logger = logger;
 		keys = new ArrayList<>();
 		pools = new Hashtable<>();
+		workerIndex = new HashMap<>();
+		selection = null;
+		selectedPlan = null;
+		selected = null;
+		selectedPools = null;
 		poolRetry = new Hashtable<>();
 		poolRetryWaitSeconds = new Hashtable<>(); 
 		poolRetryRerunSuccess = new Hashtable<>(); 
+		poolRetryPolicy = new Hashtable<>();
+		poolTimeout = new Hashtable<>();
+		poolStatus = new Hashtable<>();
+		abandonedThreads = new AtomicInteger();
+		abandonedWorkers = ConcurrentHashMap.newKeySet();
+		retryBudget = null;
+		fingerprintStore = null;
+		statusJournal = null;
 		lastMsg = new Hashtable<>();
 		lastWarn = new Hashtable<>();
 		maxThreadCount = DEFAULT_MAX_THREAD_COUNT;
 		noNewThreadsOnFailure = DEFAULT_NO_NEW_THREADS_ON_FAILURE;
+		cancelRunningOnFailure = DEFAULT_CANCEL_RUNNING_ON_FAILURE;
 		secondsBetweenMsg = DEFAULT_SECONDS_BETWEEN_MSG;
 		secondsBeforeWarn = DEFAULT_SECONDS_BEFORE_WARN;
 		startNextPoolOnFailure = START_NEXT_POOL_ON_FAILURE;
 		exitOnError = DEFAULT_EXIT_ON_ERROR;
+		globalDag = DEFAULT_GLOBAL_DAG;
+		poolDependencies = new Hashtable<>();
+		workerDurations = new Hashtable<>();
+		resourcePermits = new ResourcePermits();
+		criticalPathFirst = DEFAULT_CRITICAL_PATH_FIRST;
+		maxOvertakes = DEFAULT_MAX_OVERTAKES;
 		notInAll = new ArrayList<>();
 		poolRunning = new Hashtable<>();
 		dummy = new Thread();
 		dummy.setName("dummy");
-		threadCount = 0;
+		admission = new Admission();
+		dispatcher = new Dispatcher(this);
+		eventPublisher = new EventPublisher();
+		plan = null;
+		planDirty = true;
 	}
 	/***
-	 * Sets the maximum number of threads that can be run at once.
+	 * Sets the maximum number of threads that can be run at once. Each worker takes as many of these slots as its weight, so a worker with a weight of 4 counts as 4 threads.
+	 * Can be changed while pools are running: raising it starts waiting workers straight away, lowering it lets running workers finish but starts no more until they are under the new maximum.
+	 * The ForkJoinPool RecursiveWorker subtasks run on is resized to match, unless it was passed to setForkJoinPool: subtasks already running finish on the old pool, new ones are forked onto one of the new size.
 	 * @param maxThreadCount the new maximum number of threads that can be run at once.
 	 * @return this - for method chaining.
 	 */
 	public WorkerPool setMaxThreadCount( int maxThreadCount ) {
 		this.maxThreadCount = maxThreadCount;
+		if(executionBackend != null)
+			executionBackend.setMaxThreadCount(getBackendThreadCount());
+		resizeForkJoinPool();
+		dispatcher.drain();
+		return this;
+	}
+	//A ForkJoinPool can't change its parallelism, so the one we own is retired and the next fork creates one of the new size
+	private synchronized void resizeForkJoinPool() {
+		if(forkJoinPool != null && forkJoinPoolOwned && forkJoinPool.getParallelism() != Math.max(maxThreadCount, 1)) {
+			forkJoinPool.shutdown();
+			forkJoinPool = null;
+		}
+	}
+	/***
+	 * Lets the number of workers that run at once adjust itself while pools run, between min and max, instead of being fixed at maxThreadCount. See AdaptiveConcurrency for how it adjusts.
+	 * @param min the fewest workers that will ever be allowed to run at once, at least 1
+	 * @param max the most workers that will ever be allowed to run at once
+	 * @return this - for method chaining.
+	 */
+	public WorkerPool setAdaptiveConcurrency( int min, int max ) {
+		return setAdaptiveConcurrency(new AdaptiveConcurrency(min, max));
+	}
+	/***
+	 * Sets the controller that adjusts the number of workers that run at once while pools run. Pass null to go back to a fixed maxThreadCount.
+	 * @param adaptiveConcurrency the controller to use, or null for none
+	 * @return this - for method chaining.
+	 */
+	public WorkerPool setAdaptiveConcurrency( AdaptiveConcurrency adaptiveConcurrency ) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+		if(executionBackend != null)
+			executionBackend.setMaxThreadCount(getBackendThreadCount());
+		dispatcher.drain();
 		return this;
 	}
+	/***
+	 * Returns the controller adjusting the number of workers that run at once, or null if maxThreadCount is fixed.
+	 * @return the adaptive concurrency controller, or null
+	 */
+	public AdaptiveConcurrency getAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+	
+	//With adaptive concurrency the backend needs enough threads for the controller's maximum
+	private int getBackendThreadCount() {
+		AdaptiveConcurrency controller = adaptiveConcurrency;
+		//Plus a thread for each worker that timed out but hasn't given its thread back yet
+		return (controller == null ? maxThreadCount : Math.max(maxThreadCount, controller.getMax())) + abandonedThreads.get();
+	}
+	
+	//A worker timed out and was finished, but its thread is still running it
+	void threadAbandoned(WorkerInterface worker) {
+		abandonedWorkers.add(worker);
+		abandonedThreads.incrementAndGet();
+		resizeBackend();
+	}
+	
+	void threadReturned(WorkerInterface worker) {
+		abandonedWorkers.remove(worker);
+		abandonedThreads.decrementAndGet();
+		resizeBackend();
+	}
+	
+	//True while a worker that timed out is still running on the thread it was abandoned on, it mustn't be run again until that attempt is over
+	boolean isAbandoned(WorkerInterface worker) {
+		return abandonedWorkers.contains(worker);
+	}
+	
+	private synchronized void resizeBackend() {
+		if(executionBackend != null)
+			executionBackend.setMaxThreadCount(getBackendThreadCount());
+	}
 	/***
 	 * Returns the current value maxThreadCount
 	 * @return the current value maxThreadCount
@@ -131,6 +287,106 @@ public class WorkerPool {
 	public int getMaxThreadCount() {
 		return maxThreadCount;
 	}
+	/***
+	 * Returns the number of thread slots taken by running workers and RecursiveWorker subtasks right now, a worker takes as many slots as its weight.
+	 * @return the number of thread slots in use
+	 */
+	public int getSlotsInUse() {
+		return admission.getInUse();
+	}
+	/***
+	 * Sets the backend that provides the threads workers are run on. The backend will be kept for every pool, pool retry, and call to start, so threads can be reused.
+	 * If you never set one, an ExecutorServiceBackend bound to maxThreadCount will be created the first time a pool is started.
+	 * @param executionBackend the backend workers should be run on.
+	 * @return this - for method chaining.
+	 */
+	public WorkerPool setExecutionBackend( ExecutionBackend executionBackend ) {
+		if(this.executionBackend != null && this.executionBackend != executionBackend)
+			this.executionBackend.shutdown();
+		this.executionBackend = executionBackend;
+		if(executionBackend != null)
+			executionBackend.setMaxThreadCount(getBackendThreadCount());
+		return this;
+	}
+	/***
+	 * Convenience method for setExecutionBackend(new ExecutorServiceBackend(executor)). The passed executor belongs to you, it will not be shutdown by this WorkerPool.
+	 * @param executor the executor workers should be run on.
+	 * @return this - for method chaining.
+	 */
+	public WorkerPool setExecutorService( ExecutorService executor ) {
+		return setExecutionBackend(new ExecutorServiceBackend(executor));
+	}
+	/***
+	 * Returns the backend workers are run on, creating the default one if none has been set.
+	 * @return the backend workers are run on.
+	 */
+	public synchronized ExecutionBackend getExecutionBackend() {
+		if(executionBackend == null)
+			executionBackend = new ExecutorServiceBackend(getBackendThreadCount());
+		return executionBackend;
+	}
+	/***
+	 * Sets the ForkJoinPool that subtasks forked by a RecursiveWorker run on. The passed pool belongs to you, it will not be shutdown by this WorkerPool.
+	 * If you never set one, one with maxThreadCount threads will be created the first time a subtask is forked.
+	 * @param forkJoinPool the pool subtasks should run on.
+	 * @return this - for method chaining.
+	 */
+	public synchronized WorkerPool setForkJoinPool( ForkJoinPool forkJoinPool ) {
+		if(this.forkJoinPool != null && forkJoinPoolOwned)
+			this.forkJoinPool.shutdown();
+		this.forkJoinPool = forkJoinPool;
+		forkJoinPoolOwned = false;
+		return this;
+	}
+	/***
+	 * Returns the ForkJoinPool that subtasks forked by a RecursiveWorker run on, creating the default one if none has been set.
+	 * @return the ForkJoinPool that subtasks run on.
+	 */
+	public synchronized ForkJoinPool getForkJoinPool() {
+		if(forkJoinPool == null) {
+			forkJoinPool = new ForkJoinPool(Math.max(maxThreadCount, 1));
+			forkJoinPoolOwned = true;
+		}
+		return forkJoinPool;
+	}
+	/***
+	 * Returns the publisher of this WorkerPool's events: workers becoming ready, starting, retrying and finishing, and pools finishing. Subscribe to it to follow progress as it happens instead of polling getStatus.
+	 * On Java 9 and later wrap it in a FlowEventPublisher to get a java.util.concurrent.Flow.Publisher.
+	 * @return the publisher of this WorkerPool's events
+	 */
+	public EventPublisher getEventPublisher() {
+		return eventPublisher;
+	}
+	//Times retry waits and timeouts on a single daemon thread, it never runs workers itself. Created the first time it is needed
+	synchronized ScheduledExecutorService getScheduler() {
+		if(scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "WorkerPool-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return scheduler;
+	}
+	/***
+	 * Releases the threads held by the execution backend and the ForkJoinPool. Only needed if you want the threads back before they time out on their own, the next start will create a new backend if needed.
+	 * @return this - for method chaining.
+	 */
+	public synchronized WorkerPool shutdown() {
+		if(executionBackend != null) {
+			executionBackend.shutdown();
+			executionBackend = null;
+		}
+		if(forkJoinPool != null && forkJoinPoolOwned) {
+			forkJoinPool.shutdown();
+			forkJoinPool = null;
+		}
+		if(scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+		return this;
+	}
 	/***
 	 * Sets the number of seconds between sending status messages. It is not guaranteed that status messages will be sent at exactly the provided time interval, particularly if the interval is less than 30 seconds.
 	 * @param timeBetweenMsg seconds between sending status messages while running.
@@ -177,6 +433,23 @@ public class WorkerPool {
 	public boolean isNoNewThreadsOnFailure() {
 		return noNewThreadsOnFailure;
 	}
+	/***
+	 * If set to true then if any threads fail in a pool, every other worker still running (or waiting to retry) in that pool is cancelled and marked CANCELLED, and no more workers in that pool will be started, as if noNewThreadsOnFailure were also true.
+	 * Cancelling interrupts the worker and cancels its CancellationToken, so workers that don't block (and so never see the interrupt) should check Worker.isCancelled now and then. Either way, everything waiting on the failed worker is marked PRECEDENCE_FAILED as soon as it fails.
+	 * @param cancelRunningOnFailure the new value for cancel running on failure
+	 * @return this - for method chaining.
+	 */
+	public WorkerPool setCancelRunningOnFailure( boolean cancelRunningOnFailure ) {
+		this.cancelRunningOnFailure = cancelRunningOnFailure;
+		return this;
+	}
+	/***
+	 * Returns cancel running on failure
+	 * @return cancel running on failure
+	 */
+	public boolean isCancelRunningOnFailure() {
+		return cancelRunningOnFailure;
+	}
 	/***
 	 * Returns the value for the property: don't start next pool on failure.
 	 * @return the value for the property: don't start next pool on failure.
@@ -210,6 +483,187 @@ public class WorkerPool {
 		this.exitOnError = exitOnError;
 		return this;
 	}
+	/***
+	 * Returns true if pools are run as stages of one global dependency graph.
+	 * @return the value for global DAG
+	 */
+	public boolean isGlobalDag() {
+		return globalDag;
+	}
+	/***
+	 * Used to set global DAG. When false (the default) start and startPools run one pool after another, in order, and precedence constraints only apply within a pool.
+	 * When true the pools passed to start, startPools, or any of the Async methods are run together as one dependency graph: a worker starts as soon as its parents are done, even if they are in another pool, so a slow worker at the end of one pool no longer holds back the next one.
+	 * The order pools were added in is then ignored, a pool only waits for another pool when told to with addPoolDependency. startNextPoolOnFailure and pool retry still apply, to the pools that depend on a failed pool and to the failed pool itself respectively.
+	 * @param globalDag the new value for global DAG
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setGlobalDag(boolean globalDag) {
+		this.globalDag = globalDag;
+		planDirty = true;
+		return this;
+	}
+	/***
+	 * Makes the last pool added wait for every worker in the passed pool to finish before any of its workers start. Only used when global DAG is true.
+	 * @param dependsOnPool the name of the pool the last pool added should wait for
+	 * @return this - for method chaining
+	 */
+	public WorkerPool addPoolDependency(String dependsOnPool) {
+		if(lastPoolKey == null)
+			throw new ArrayIndexOutOfBoundsException("No pools have been added yet");
+		return addPoolDependency(lastPoolKey, dependsOnPool);
+	}
+	/***
+	 * Makes the passed pool wait for every worker in the other passed pool to finish before any of its workers start. Only used when global DAG is true.
+	 * @param poolName the name of the pool that should wait
+	 * @param dependsOnPool the name of the pool it should wait for
+	 * @return this - for method chaining
+	 * @throws ArrayIndexOutOfBoundsException thrown if either pool does not exist
+	 */
+	public WorkerPool addPoolDependency(String poolName, String dependsOnPool) throws ArrayIndexOutOfBoundsException {
+		if(!pools.containsKey(poolName))
+			throw new ArrayIndexOutOfBoundsException("Could not find pool with name: " + poolName);
+		if(!pools.containsKey(dependsOnPool))
+			throw new ArrayIndexOutOfBoundsException("Could not find pool with name: " + dependsOnPool);
+		if(!poolDependencies.containsKey(poolName))
+			poolDependencies.put(poolName, new LinkedHashSet<String>());
+		poolDependencies.get(poolName).add(dependsOnPool);
+		planDirty = true;
+		return this;
+	}
+	/***
+	 * Returns true if ready workers are started longest remaining path first.
+	 * @return the value for critical path first
+	 */
+	public boolean isCriticalPathFirst() {
+		return criticalPathFirst;
+	}
+	/***
+	 * Used to set critical path first. When more workers are ready to start than there are free threads, if true (the default) the worker with the longest chain of work still waiting on it is started first, if false they are started in the order they were added.
+	 * The length of a chain is the sum of how long each worker in it is expected to run: the duration recorded the last time it succeeded, or if it never has its getExpectedMilliseconds hint. A worker with neither counts as 1 millisecond.
+	 * @param criticalPathFirst the new value for critical path first
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setCriticalPathFirst(boolean criticalPathFirst) {
+		this.criticalPathFirst = criticalPathFirst;
+		return this;
+	}
+	/***
+	 * Returns a copy of the duration, in milliseconds, each worker took the last time it succeeded, by thread name. Save this and pass it to setWorkerDurations to keep the durations between runs of your program.
+	 * @return a copy of the recorded worker durations
+	 */
+	public Map<String,Long> getWorkerDurations() {
+		return new HashMap<>(workerDurations);
+	}
+	/***
+	 * Adds to (or replaces) the recorded duration, in milliseconds, of the workers with the passed thread names. Used to start the longest chains first, see setCriticalPathFirst.
+	 * @param workerDurations durations in milliseconds by thread name, for instance from getWorkerDurations on an earlier run.
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setWorkerDurations(Map<String,Long> workerDurations) {
+		this.workerDurations.putAll(workerDurations);
+		return this;
+	}
+	/***
+	 * Limits how many workers with the passed resource tag can run at once, across every pool. maxThreadCount still applies on top of this.
+	 * When a ready worker can't get a permit for one of its tags it waits, without holding a thread, and other ready workers are started instead. Can be changed while pools are running.
+	 * @param resourceTag the resource tag to limit, as added with Worker.addResourceTag
+	 * @param permits the maximum number of workers with the tag that can run at once
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setResourceLimit(String resourceTag, int permits) {
+		resourcePermits.setLimit(resourceTag, permits);
+		dispatcher.unpark(Collections.singleton(resourceTag));
+		dispatcher.drain();
+		return this;
+	}
+	/***
+	 * Removes the limit on the passed resource tag.
+	 * @param resourceTag the resource tag to stop limiting
+	 * @return this - for method chaining
+	 */
+	public WorkerPool removeResourceLimit(String resourceTag) {
+		resourcePermits.removeLimit(resourceTag);
+		dispatcher.unpark(Collections.singleton(resourceTag));
+		dispatcher.drain();
+		return this;
+	}
+	/***
+	 * Returns the limit on the passed resource tag, or -1 if it has none.
+	 * @param resourceTag the resource tag to look up
+	 * @return the limit on the passed resource tag, or -1 if it has none.
+	 */
+	public int getResourceLimit(String resourceTag) {
+		return resourcePermits.getLimit(resourceTag);
+	}
+	/***
+	 * Adds a resource tag to the last worker added. Only works for workers that extend Worker.
+	 * @param resourceTag the name of a resource the last worker added uses
+	 * @return this - for method chaining
+	 */
+	public WorkerPool addResourceTag(String resourceTag) {
+		if(lastWorker == null)
+			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
+		if(!(lastWorker instanceof Worker))
+			throw new IllegalArgumentException("Resource tags can only be added to workers that extend Worker, " + lastWorker.getThreadName() + " doesn't");
+		((Worker) lastWorker).addResourceTag(resourceTag);
+		return this;
+	}
+	/***
+	 * Adds a tag to the last worker added, see Worker.addTag. Only works for workers that extend Worker.
+	 * @param tag the tag to add
+	 * @return this - for method chaining
+	 */
+	public WorkerPool addTag(String tag) {
+		if(lastWorker == null)
+			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
+		if(!(lastWorker instanceof Worker))
+			throw new IllegalArgumentException("Tags can only be added to workers that extend Worker, " + lastWorker.getThreadName() + " doesn't");
+		((Worker) lastWorker).addTag(tag);
+		return this;
+	}
+	/***
+	 * Sets the weight of the last worker added, the number of slots of maxThreadCount it takes while it runs. Only works for workers that extend Worker.
+	 * @param weight the number of slots the last worker added takes while it runs
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setWeight(int weight) {
+		if(lastWorker == null)
+			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
+		if(!(lastWorker instanceof Worker))
+			throw new IllegalArgumentException("A weight can only be set on workers that extend Worker, " + lastWorker.getThreadName() + " doesn't");
+		((Worker) lastWorker).setWeight(weight);
+		return this;
+	}
+	/***
+	 * Sets the timeout of the last worker added, how long it may run in milliseconds before it is cancelled and marked TIMED_OUT. Only works for workers that extend Worker.
+	 * @param timeoutMilliseconds how long the last worker added may run, 0 for no timeout
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setTimeoutMilliseconds(long timeoutMilliseconds) {
+		if(lastWorker == null)
+			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
+		if(!(lastWorker instanceof Worker))
+			throw new IllegalArgumentException("A timeout can only be set on workers that extend Worker, " + lastWorker.getThreadName() + " doesn't");
+		((Worker) lastWorker).setTimeoutMilliseconds(timeoutMilliseconds);
+		return this;
+	}
+	/***
+	 * Sets how many lighter workers can start ahead of a heavier worker that is waiting for enough free slots. Once a waiting worker has been overtaken this many times it reserves slots as they free up, and no other worker (or subtask) starts until it fits.
+	 * 0 means workers always start in order, with nothing started ahead of a worker that doesn't fit yet.
+	 * @param maxOvertakes the number of workers that can start ahead of a waiting worker
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setMaxOvertakes(int maxOvertakes) {
+		this.maxOvertakes = maxOvertakes;
+		return this;
+	}
+	/***
+	 * Returns the number of lighter workers that can start ahead of a heavier worker that is waiting for slots.
+	 * @return the current value of maxOvertakes
+	 */
+	public int getMaxOvertakes() {
+		return maxOvertakes;
+	}
 	/***
 	 * Allows you to pass a list of the name of all the thread pools you want to create.
 	 * @param poolNames  a list of the name of all the thread pools you want to create.
@@ -220,7 +674,9 @@ public class WorkerPool {
 		pools.clear();
 		for(String aKey : keys )
 			pools.put(aKey, new ArrayList<WorkerInterface>());
+		workerIndex = new HashMap<>();
 		lastPoolKey = null;
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -230,8 +686,9 @@ public class WorkerPool {
 	 */
 	public WorkerPool addPool( String poolName ) {
 		keys.add(poolName);
-		pools.put(poolName, new ArrayList<WorkerInterface>());
+		unindexWorkers(pools.put(poolName, new ArrayList<WorkerInterface>()));
 		lastPoolKey = poolName;
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -268,8 +725,147 @@ public class WorkerPool {
 		poolRetry.put(poolName, retryAttempts);
 		poolRetryWaitSeconds.put(poolName, retryWaitSeconds);
 		poolRetryRerunSuccess.put(poolName, rerunSuccess);
+		poolRetryPolicy.remove(poolName);
+		return this;
+	}
+	/***
+	 * For the last pool added sets how long to wait before each retry of the pool, for instance exponential backoff with jitter. The number of retries is still set with setRetry.
+	 * @param retryPolicy how long to wait before each retry, null to go back to a fixed wait of retryWaitSeconds
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setPoolRetryPolicy(RetryPolicy retryPolicy) {
+		if(lastPoolKey == null)
+			throw new ArrayIndexOutOfBoundsException("No pools have been added yet");
+		return setPoolRetryPolicy(lastPoolKey, retryPolicy);
+	}
+	/***
+	 * For the passed poolName sets how long to wait before each retry of the pool, for instance exponential backoff with jitter. The number of retries is still set with setRetry.
+	 * @param poolName the name of the pool you wish to configure
+	 * @param retryPolicy how long to wait before each retry, null to go back to a fixed wait of retryWaitSeconds
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setPoolRetryPolicy(String poolName, RetryPolicy retryPolicy) {
+		if(retryPolicy == null)
+			poolRetryPolicy.remove(poolName);
+		else
+			poolRetryPolicy.put(poolName, retryPolicy);
 		return this;
 	}
+	/***
+	 * Returns how long to wait before each retry of the passed pool. Unless one has been set this is RetryPolicy.fixed(retryWaitSeconds).
+	 * @param poolName the pool name you wish to lookup a value for
+	 * @return how long to wait before each retry of the passed pool
+	 */
+	public RetryPolicy getPoolRetryPolicy(String poolName) {
+		RetryPolicy policy = poolRetryPolicy.get(poolName);
+		if(policy != null)
+			return policy;
+		return RetryPolicy.fixed(poolRetryWaitSeconds.containsKey(poolName) ? poolRetryWaitSeconds.get(poolName) : 0);
+	}
+	/***
+	 * For the last pool added sets how long it may run, in milliseconds, see setPoolTimeoutMilliseconds(String, long).
+	 * @param timeoutMilliseconds how long the pool may run, 0 for no timeout
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setPoolTimeoutMilliseconds(long timeoutMilliseconds) {
+		if(lastPoolKey == null)
+			throw new ArrayIndexOutOfBoundsException("No pools have been added yet");
+		return setPoolTimeoutMilliseconds(lastPoolKey, timeoutMilliseconds);
+	}
+	/***
+	 * For the passed poolName sets how long it may run, in milliseconds. The time counts from when the pool starts, each retry of the pool gets the full time again.
+	 * Once it is up the pool starts no more workers, and every worker in it that is still running is cancelled and marked TIMED_OUT, as if each had run past a timeout of its own.
+	 * @param poolName the name of the pool you wish to configure
+	 * @param timeoutMilliseconds how long the pool may run, 0 for no timeout
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setPoolTimeoutMilliseconds(String poolName, long timeoutMilliseconds) {
+		if(timeoutMilliseconds <= 0)
+			poolTimeout.remove(poolName);
+		else
+			poolTimeout.put(poolName, timeoutMilliseconds);
+		return this;
+	}
+	/***
+	 * Returns how long the passed pool may run, in milliseconds, 0 if it has no timeout.
+	 * @param poolName the pool name you wish to lookup a value for
+	 * @return how long the passed pool may run, 0 if it has no timeout
+	 */
+	public long getPoolTimeoutMilliseconds(String poolName) {
+		Long timeout = poolTimeout.get(poolName);
+		return timeout == null ? 0 : timeout;
+	}
+	/***
+	 * Caps the number of worker retries across every pool, see RetryBudget. Without a budget every worker makes every retry it is set to.
+	 * @param retryBudget the budget to use, null for no budget
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setRetryBudget(RetryBudget retryBudget) {
+		this.retryBudget = retryBudget;
+		return this;
+	}
+	/***
+	 * Caps the number of worker retries across every pool, to maxRetries in a burst and retryRatio retries per worker started over time. See RetryBudget.
+	 * @param maxRetries the most retries that can be made in a burst
+	 * @param retryRatio the retries earned by each worker started
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setRetryBudget(int maxRetries, double retryRatio) {
+		return setRetryBudget(new RetryBudget(maxRetries, retryRatio));
+	}
+	/***
+	 * Returns the retry budget, or null if there is none.
+	 * @return the retry budget, or null if there is none.
+	 */
+	public RetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+	/***
+	 * Sets where input fingerprints are kept between runs. With a store, a worker whose input fingerprint (see WorkerInterface.getInputFingerprint), and those of everything upstream of it, are unchanged since it last succeeded is up to date and is skipped: it is marked SUCCESS without running and the workers waiting on it are released straight away.
+	 * The store is saved at the end of each pool run. Without a store (the default) every worker runs.
+	 * @param fingerprintStore where to keep input fingerprints, null to always run every worker
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setFingerprintStore(FingerprintStore fingerprintStore) {
+		this.fingerprintStore = fingerprintStore;
+		return this;
+	}
+	/***
+	 * Returns where input fingerprints are kept, or null if every worker always runs.
+	 * @return the fingerprint store, or null
+	 */
+	public FingerprintStore getFingerprintStore() {
+		return fingerprintStore;
+	}
+	/***
+	 * Sets the journal every status change of every worker is recorded in as pools run, so that if the run dies part way through it can be picked up where it stopped with resume. Without a journal (the default) nothing is recorded.
+	 * @param statusJournal the journal to record in, null to stop recording
+	 * @return this - for method chaining
+	 */
+	public WorkerPool setStatusJournal(StatusJournal statusJournal) {
+		this.statusJournal = statusJournal;
+		return this;
+	}
+	/***
+	 * Returns the journal status changes are recorded in, or null if there is none.
+	 * @return the status journal, or null
+	 */
+	public StatusJournal getStatusJournal() {
+		return statusJournal;
+	}
+	/***
+	 * Picks up a run that died part way through. Every worker the passed journal last saw succeed is set to SUCCESS, and so is skipped by the next start, every other worker is set back to PENDING. The journal is then kept (see setStatusJournal), so if this run dies too it can be resumed again.
+	 * Call this once every pool and worker has been added, then start as normal.
+	 * @param statusJournal the journal of the run to pick up
+	 * @return this - for method chaining
+	 */
+	public WorkerPool resume(StatusJournal statusJournal) {
+		Map<String,Status> statuses = statusJournal.getStatuses();
+		for(String aKey : keys)
+			for(WorkerInterface aWorker : pools.get(aKey))
+				aWorker.setStatus(Status.SUCCESS.equals(statuses.get(aWorker.getThreadName())) ? Status.SUCCESS : Status.PENDING);
+		return setStatusJournal(statusJournal);
+	}
 	/***
 	 * Returns the number of retry attempts for the passed poolName
 	 * @param poolName the pool name you wish to lookup a value for
@@ -293,7 +889,9 @@ public class WorkerPool {
 	 * @return this - for method chaining.
 	 */
 	public WorkerPool setWorkers( String poolName, List<WorkerInterface> workers ) {
-		pools.put(poolName, workers);
+		unindexWorkers(pools.put(poolName, workers));
+		indexWorkers(workers);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -304,7 +902,9 @@ public class WorkerPool {
 	public WorkerPool setWorkers( List<WorkerInterface> workers ) {
 		if(lastPoolKey == null)
 			throw new ArrayIndexOutOfBoundsException("No pools have been added yet");		
-		pools.put(lastPoolKey, workers);		
+		unindexWorkers(pools.put(lastPoolKey, workers));
+		indexWorkers(workers);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -315,7 +915,9 @@ public class WorkerPool {
 	 */
 	public WorkerPool addWorker( String poolName, WorkerInterface newWorker ) {
 		pools.get(poolName).add(newWorker);
+		indexWorker(newWorker);
 		lastWorker = newWorker;
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -327,15 +929,68 @@ public class WorkerPool {
 		if(lastPoolKey == null)
 			throw new ArrayIndexOutOfBoundsException("No pools have been added yet");	
 		pools.get(lastPoolKey).add(newWorker);
+		indexWorker(newWorker);
 		lastWorker = newWorker;
+		planDirty = true;
 		return this;
 	}
+	/***
+	 * Takes a pool name and adds a list of workers to the end of that pools list of workers, in order. Much faster than calling addWorker for each when building a large graph, as the thread names are all checked in one pass.
+	 * Nothing is added unless every thread name is new, both within the list and across every pool.
+	 * @param poolName the name of the pool you want to add the workers to.
+	 * @param newWorkers the workers you wish to add to the pool
+	 * @return this - for method chaining.
+	 * @throws DuplicateThreadNameException thrown if any thread name is in the list twice, or is already in a pool
+	 * @throws ArrayIndexOutOfBoundsException thrown if the pool does not exist
+	 */
+	public WorkerPool addWorkers( String poolName, List<? extends WorkerInterface> newWorkers ) throws DuplicateThreadNameException, ArrayIndexOutOfBoundsException {
+		List<WorkerInterface> pool = pools.get(poolName);
+		if(pool == null)
+			throw new ArrayIndexOutOfBoundsException("Could not find pool with name: " + poolName);
+		Map<String,WorkerInterface> index = getWorkerIndex();
+		Set<String> names = new HashSet<>();
+		Set<String> dups = new LinkedHashSet<>();
+		for(WorkerInterface aWorker : newWorkers) {
+			String aName = aWorker.getThreadName();
+			WorkerInterface existing = index.get(aName);
+			if(!names.add(aName) || (existing != null && aName.equals(existing.getThreadName())))
+				dups.add(aName);
+		}
+		if(dups.size() > 0) {
+			StringBuilder output = new StringBuilder("Thread names must be globally unique both within and accross pools. The following thread name(s) appears more than once: ");
+			First first = new First();
+			for(String aName : dups) {
+				if(!first.first())
+					output.append(", ");
+				output.append(aName);
+			}
+			throw new DuplicateThreadNameException(output.toString());
+		}
+		pool.addAll(newWorkers);
+		indexWorkers(newWorkers);
+		if(!newWorkers.isEmpty())
+			lastWorker = newWorkers.get(newWorkers.size() - 1);
+		planDirty = true;
+		return this;
+	}
+	/***
+	 * Adds a list of workers to the end of the pool associated with the last pool added with addPool, see addWorkers(String, List).
+	 * @param newWorkers the workers you wish to add to the pool
+	 * @return this - for method chaining.
+	 * @throws DuplicateThreadNameException thrown if any thread name is in the list twice, or is already in a pool
+	 */
+	public WorkerPool addWorkers( List<? extends WorkerInterface> newWorkers ) throws DuplicateThreadNameException {
+		if(lastPoolKey == null)
+			throw new ArrayIndexOutOfBoundsException("No pools have been added yet");
+		return addWorkers(lastPoolKey, newWorkers);
+	}
 	/***
 	 * Sets the last worker added with either the addWorker method to the Not In All list. Workers in the Not In All pool will not be run if ALL arg is passed as the runArg, or no runArg is passed at all. To run these you must explicitly add the name of the name of the worker to the runArg.
 	 * @return this - for method chaining.
 	 */
 	public WorkerPool setNotInAll() {
 		notInAll.add(lastWorker.getThreadName());
+		selectedPlan = null;
 		return this;
 	}
 	/***
@@ -345,6 +1000,7 @@ public class WorkerPool {
 	 */
 	public WorkerPool setNotInAll(String workerThreadName) {
 		notInAll.add(workerThreadName);
+		selectedPlan = null;
 		return this;
 	}
 	/***
@@ -355,7 +1011,10 @@ public class WorkerPool {
 	public WorkerPool setThreadName(String threadName) {
 		if(lastWorker == null)
 			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
+		unindexWorker(lastWorker);
 		lastWorker.setThreadName(threadName);
+		indexWorker(lastWorker);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -367,7 +1026,10 @@ public class WorkerPool {
 		if(lastWorker == null)
 			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
 		String threadName = prepend + lastWorker.getThreadName();
+		unindexWorker(lastWorker);
 		lastWorker.setThreadName(threadName);
+		indexWorker(lastWorker);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -379,7 +1041,10 @@ public class WorkerPool {
 		if(lastWorker == null)
 			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
 		String threadName = lastWorker.getThreadName() + append;
+		unindexWorker(lastWorker);
 		lastWorker.setThreadName(threadName);
+		indexWorker(lastWorker);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -400,6 +1065,7 @@ public class WorkerPool {
 		if(lastWorker == null)
 			throw new ArrayIndexOutOfBoundsException("No workers have been added yet");
 		lastWorker.setPrecedenceConstraint(precedenceConstraint);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -417,6 +1083,7 @@ public class WorkerPool {
 			currentPrecedenceConstraint = lastWorker.getPrecedenceConstraint();
 		currentPrecedenceConstraint.add(precedenceConstraint);
 		lastWorker.setPrecedenceConstraint(currentPrecedenceConstraint);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -428,6 +1095,7 @@ public class WorkerPool {
 	public WorkerPool setPrecedenceConstraint(String threadName, Set<String> precedenceConstraint) {
 		WorkerInterface target = getWorker(threadName);
 		target.setPrecedenceConstraint(precedenceConstraint);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -438,9 +1106,14 @@ public class WorkerPool {
 	 */
 	public WorkerPool addPrecedenceConstraint(String threadName, String precedenceConstraint) {
 		WorkerInterface target = getWorker(threadName);
-		Set<String> currentPrecedenceConstraint = target.getPrecedenceConstraint();
+		Set<String> currentPrecedenceConstraint = null;
+		if(target.getPrecedenceConstraint() == null)
+			currentPrecedenceConstraint = new HashSet<>();
+		else
+			currentPrecedenceConstraint = target.getPrecedenceConstraint();
 		currentPrecedenceConstraint.add(precedenceConstraint);
 		target.setPrecedenceConstraint(currentPrecedenceConstraint);
+		planDirty = true;
 		return this;
 	}
 	/***
@@ -467,21 +1140,70 @@ public class WorkerPool {
 		return this;
 	}
 
-	private int threadMinus() {
-		int out = 0;
-		synchronized(threadCount) {
-			threadCount--;
-			out = threadCount;
-		}
-		return out;
+	//Called by RecursiveWorker for each subtask it forks
+	boolean tryAcquireSlot() {
+		return tryAcquireSlots(1, null) == 1;
+	}
+	
+	void releaseSlot() {
+		releaseSlots(1);
 	}
 	
-	private int getThreadCount() {
-		int out = 0;
-		synchronized(threadCount) {
-			out = threadCount;
+	private int getSlotLimit() {
+		AdaptiveConcurrency controller = adaptiveConcurrency;
+		return controller == null ? maxThreadCount : controller.getLimit();
+	}
+	
+	//See Admission.tryAcquire
+	int tryAcquireSlots(int weight, Object owner) {
+		return admission.tryAcquire(weight, getSlotLimit(), owner);
+	}
+	
+	void releaseSlots(int slots) {
+		admission.release(slots);
+	}
+	
+	void cancelReservation(Object owner) {
+		admission.cancelReservation(owner);
+	}
+	
+	//Free slots not reserved by anyone
+	int getFreeSlots() {
+		return admission.getFree(getSlotLimit());
+	}
+	
+	Dispatcher getDispatcher() {
+		return dispatcher;
+	}
+	
+	ResourcePermits getResourcePermits() {
+		return resourcePermits;
+	}
+	
+	//Recorded duration first, then the worker's own hint, and 1 so a chain of unknowns is still ranked by length
+	long getExpectedMilliseconds(WorkerInterface worker) {
+		Long recorded = workerDurations.get(worker.getThreadName());
+		if(recorded != null)
+			return Math.max(recorded, 1);
+		return Math.max(worker.getExpectedMilliseconds(), 1);
+	}
+	
+	//Records how long a worker took, and feeds it to adaptive concurrency against how long it was expected to take
+	void workerCompleted(WorkerInterface worker, long milliseconds, Status status, int slots) {
+		boolean success = Status.SUCCESS.equals(status);
+		AdaptiveConcurrency controller = adaptiveConcurrency;
+		if(controller != null) {
+			long expected = 0;
+			if(success) {
+				Long recorded = workerDurations.get(worker.getThreadName());
+				expected = recorded != null ? recorded : worker.getExpectedMilliseconds();
+			}
+			//The slot of the worker that just finished has already been given back
+			int running = admission.getInUse() + slots;
+			controller.sample(milliseconds, expected, running, logger);
 		}
-		return out;
+		if(success)
+			workerDurations.put(worker.getThreadName(), milliseconds);
 	}
 	
 	/***
@@ -491,80 +1213,96 @@ public class WorkerPool {
 	 * @throws ArrayIndexOutOfBoundsException thrown if the threadName is not in any pool
 	 */
 	public WorkerInterface getWorker(String threadName) throws ArrayIndexOutOfBoundsException {
-		for(String aKey : keys) {
-			for(WorkerInterface aWorker : pools.get(aKey)) {
-				if(aWorker.getThreadName().equals(threadName)) {
-					return aWorker;
-				}
-			}
+		WorkerInterface found = getWorkerIndex().get(threadName);
+		if(found == null || !found.getThreadName().equals(threadName)) {
+			//Renamed on the worker itself, or added straight to a list passed to setWorkers, since it was indexed
+			workerIndex = null;
+			found = getWorkerIndex().get(threadName);
 		}
-		throw new ArrayIndexOutOfBoundsException("Could not find worker with name: " + threadName);
+		if(found == null)
+			throw new ArrayIndexOutOfBoundsException("Could not find worker with name: " + threadName);
+		return found;
 	}
 	
-	private void checkThreadNames() throws DuplicateThreadNameException {
-		Set<String> dups = new HashSet<>();
-		Set<String> allThreadNames = new HashSet<>();
-		for(String aKey : keys) {
-			for(WorkerInterface aWorker : pools.get(aKey)) {
-				if(allThreadNames.contains(aWorker.getThreadName())) 
-					dups.add(aWorker.getThreadName());
-				allThreadNames.add(aWorker.getThreadName());
-			}
-		}
-		
-		if(dups.size() > 0) {
-			StringBuilder output = new StringBuilder("Thread names must be globally unique both within and accross pools. The following thread name(s) appears more than once: ");
-			First first = new First();
-			for(String aName : dups) {
-				if(!first.first())
-					output.append(", ");
-				output.append(aName);
-			}
-			throw new DuplicateThreadNameException(output.toString());
+	private Map<String,WorkerInterface> getWorkerIndex() {
+		Map<String,WorkerInterface> index = workerIndex;
+		if(index == null) {
+			index = new HashMap<>();
+			for(String aKey : keys)
+				for(WorkerInterface aWorker : pools.get(aKey))
+					index.putIfAbsent(aWorker.getThreadName(), aWorker);
+			workerIndex = index;
 		}
+		return index;
 	}
 	
-	private void checkForPrecedenceLoop() throws CircularPrecedenceConstraintException {
-		for(String aKey : keys) {
-			for(WorkerInterface aWorker : pools.get(aKey)) {
-				Set<String> pc = getCurrentPrecedenceConstraint(aWorker, aKey);
-				for(String aChildName : pc) {
-					WorkerInterface child = this.getWorker(aChildName);
-					if(child.getPrecedenceConstraint() != null) {
-						for(String aGrandChildName : child.getPrecedenceConstraint()) {
-							if(aWorker.getThreadName().equalsIgnoreCase(aGrandChildName)) {
-								throw new CircularPrecedenceConstraintException("The workers: " + aWorker.getThreadName() + " and " + child.getThreadName() + " both list eachother as a precedence constraint which creates and unresolveable loop.");
-							}
-						}
-					}
-				}
-			}
-		}
+	private void indexWorker(WorkerInterface aWorker) {
+		Map<String,WorkerInterface> index = workerIndex;
+		if(index != null)
+			index.putIfAbsent(aWorker.getThreadName(), aWorker);
 	}
 	
-	private boolean checkPrecedence( WorkerInterface toCheck, List<WorkerInterface> pool ) {
-		if(toCheck.getPrecedenceConstraint() == null || toCheck.getPrecedenceConstraint().size() == 0)
-			return true;
-		for(String aConstraint : toCheck.getPrecedenceConstraint()) {
-			for(WorkerInterface aWorker : pool) {
-				if(aConstraint.equals(aWorker.getThreadName())) {
-					if(StatusMeta.isFailed(getWorkerStatus(aWorker))) {
-						toCheck.setStatus(Status.PRECEDENCE_FAILED);
-						return false;
-					} else if (!getWorkerStatus(aWorker).equals(Status.SUCCESS)) {
-						return false;
-					}
-				}
-			}
+	private void indexWorkers(List<? extends WorkerInterface> workers) {
+		for(WorkerInterface aWorker : workers)
+			indexWorker(aWorker);
+	}
+	
+	//Only drops the name if it points at this worker, another worker with the same name is found again by getWorker
+	private void unindexWorker(WorkerInterface aWorker) {
+		Map<String,WorkerInterface> index = workerIndex;
+		if(index != null)
+			index.remove(aWorker.getThreadName(), aWorker);
+	}
+	
+	private void unindexWorkers(List<WorkerInterface> workers) {
+		if(workers != null)
+			for(WorkerInterface aWorker : workers)
+				unindexWorker(aWorker);
+	}
+	
+	/***
+	 * Freezes the current pools, workers and precedence constraints into an ExecutionPlan, which is what is actually used to run the pools.
+	 * You never need to call this, the start methods will compile whenever the graph has changed since the last compile, but calling it up front lets you find problems (such as duplicate thread names) before you start.
+	 * Changes made through this class are always picked up. Changes made directly on a worker after it was added, to its thread name or its precedence constraints, are picked up too.
+	 * Compiling also validates the graph: any loop in the precedence constraints (or with global DAG, in the precedence constraints and pool dependencies), however long, is reported with the full path of the loop, and any constraint that names a missing worker, or a worker in another pool when global DAG is false, is logged.
+	 * @return the compiled plan
+	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
+	 */
+	public synchronized ExecutionPlan compile() throws DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		plan = null;
+		planDirty = true;
+		ExecutionPlan newPlan = new ExecutionPlan(keys, pools, globalDag ? poolDependencies : null);
+		for(String[] aConstraint : newPlan.getUnresolvedConstraints()) {
+			if(aConstraint[3] == null)
+				LoggingTemplate.log(logger, LoggingTemplate.getConstraintMissingLevel(), LoggingTemplate.getConstraintMissing(), aConstraint[0], aConstraint[2]);
+			else
+				LoggingTemplate.log(logger, LoggingTemplate.getConstraintOtherPoolLevel(), LoggingTemplate.getConstraintOtherPool(), aConstraint[0], aConstraint[1], aConstraint[2], aConstraint[3]);
 		}
-		return true;
+		plan = newPlan;
+		planDirty = false;
+		select(plan);
+		return plan;
 	}
+	
+	/*
+	 * Returns the current plan, only compiling (and so validating) if something changed since the last compile.
+	 * If pool names are passed only those pools are checked for changes made directly on their workers.
+	 */
+	synchronized ExecutionPlan getPlan(String ...poolNames) throws DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		if(plan == null || planDirty || !plan.isCurrent(pools, poolNames))
+			return compile();
+		select(plan);
+		return plan;
+	}
+	
 	/***
 	 * Used to control which pools / workers will run.
 	 * The concept behind this is that when this package is called the user will be able to provide a argument to control what will and will not run in this package.
 	 * If all is passed everything in the package, not market as "notInAll" will run.
 	 * If a pool name is passed everything that will act like you passed the name of all workers in that pool.
 	 * If you put a minus (-) in front of a worker / pool name than that worker / pool will be removed from execution.
+	 * Names can be globs (* and ?), and tag: or regex: followed by a tag or regular expression choose by tag or regular expression instead, see Selection.fromRunArg. Nothing is removed from the pools, this just sets the selection.
 	 * @param runArg a list of pool / worker names.
 	 * @return this - for method chaining.
 	 */
@@ -577,82 +1315,95 @@ public class WorkerPool {
 	 * If all is passed everything in the package, not market as "notInAll" will run.
 	 * If a pool name is passed everything that will act like you passed the name of all workers in that pool.
 	 * If you put a minus (-) in front of a worker / pool name than that worker / pool will be removed from execution.
+	 * Names can be globs (* and ?), and tag: or regex: followed by a tag or regular expression choose by tag or regular expression instead, see Selection.fromRunArg. Nothing is removed from the pools, this just sets the selection.
 	 * @param runArg a list of pool / worker names.
 	 * @return this - for method chaining.
 	 */
 	public WorkerPool setRunArg( String[] runArg ) {
-		boolean hasAll = false;
-		Set<String> include = new HashSet<>();
-		Set<String> exclude = new HashSet<>();
-		for(int i = 0; i < runArg.length; i++) {
-			//If all (which means include all that aren't marked as not in all.
-			if(runArg[i].equalsIgnoreCase("ALL")) {
-				hasAll = true;
-			} else {
-				//Set add (true by default) by checking if this is a remove (start with -)
-				boolean add = true;
-				if(runArg[i].startsWith("-")){
-					add = false;
-					runArg[i] = runArg[i].substring(1);
-				//remove plus, they don't do anything but since we look for -, it possible people will get confused
-				} else if(runArg[i].startsWith("+")) {
-					runArg[i] = runArg[i].substring(1); 
-				}
-				//check if what is passed is a pool instead of a specific worker
-				boolean isPool = false;
-				for(String aKey : keys) {
-					//if this is a pool, add all workers in the pool to either include or exclude based on add
-					if(runArg[i].equalsIgnoreCase(aKey)) {
-						isPool = true;
-						for(WorkerInterface aWorker : pools.get(aKey)) {
-							if(add) {
-								include.add(aWorker.getThreadName().toUpperCase());
-							} else {
-								exclude.add(aWorker.getThreadName().toUpperCase());
-							}
-						}
-						break;
-					}
-				}
-				
-				//If this is not a pool
-				if(!isPool) {
-					if (!add) {
-						exclude.add(runArg[i].toUpperCase());
-					} else {
-						include.add(runArg[i].toUpperCase());
-					}
-				}
-			}
-		}
-		
-		if(hasAll) {
-			for(String aNot : notInAll) {
-				aNot = aNot.toUpperCase();
-				if(!include.contains(aNot))
-					exclude.add(aNot);
-			}
-		}
-		
-		for(String aKey : keys) {
-			Iterator<WorkerInterface> workerItr = pools.get(aKey).iterator();
-			while(workerItr.hasNext()) {
-				String aName = workerItr.next().getThreadName().toUpperCase();
-				if(exclude.contains(aName)) {
-					workerItr.remove();
-				} else if (!hasAll && !include.contains(aName)) {
-					workerItr.remove();
-				}
-			}
-		}
+		return setSelection(Selection.fromRunArg(runArg));
+	}
+	/***
+	 * Chooses which workers run from now on, see Selection. Nothing is removed from the pools: workers that aren't chosen are left as they are, and the status of a pool only counts its chosen workers.
+	 * Changing the selection doesn't recompile the pools, so the same pools can be run with one selection after another. Changes made to the passed selection afterwards are not picked up, call this again.
+	 * @param selection which workers to run, null to run every worker
+	 * @return this - for method chaining.
+	 */
+	public synchronized WorkerPool setSelection(Selection selection) {
+		this.selection = selection == null ? null : selection.copy();
+		selectedPlan = null;
+		selected = null;
+		selectedPools = null;
+		if(plan != null && !planDirty)
+			select(plan);
 		return this;
 	}
+	/***
+	 * Returns the current selection, or null if every worker runs.
+	 * @return the current selection
+	 */
+	public Selection getSelection() {
+		return selection;
+	}
+	/***
+	 * Returns the workers of the passed pool that the selection chooses, in the order they were added, or every worker in the pool if there is no selection. Compiles the pools if they have changed.
+	 * @param poolName the name of the pool
+	 * @return a copy of the chosen workers of the pool
+	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
+	 */
+	public List<WorkerInterface> getSelectedWorkers(String poolName) throws DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		getPlan(poolName);
+		return new ArrayList<>(getPoolWorkers(poolName));
+	}
+	
+	//The workers of the pool that take part in a run, only the chosen ones if there is a selection
+	List<WorkerInterface> getPoolWorkers(String poolName) {
+		Map<String,List<WorkerInterface>> view = selectedPools;
+		List<WorkerInterface> chosen = view == null ? null : view.get(poolName);
+		return chosen == null ? pools.get(poolName) : chosen;
+	}
+	
+	//Works out what the selection chooses from the passed plan, once per plan
+	private synchronized void select(ExecutionPlan aPlan) {
+		if(selection == null || selectedPlan == aPlan)
+			return;
+		boolean[] chosen = selection.resolve(aPlan, notInAll);
+		Map<String,List<WorkerInterface>> view = new HashMap<>();
+		for(int p = 0; p < aPlan.getPoolCount(); p++)
+			view.put(aPlan.getPoolNameAt(p), new ArrayList<WorkerInterface>());
+		for(int id = 0; id < chosen.length; id++)
+			if(chosen[id])
+				view.get(aPlan.getPoolName(id)).add(aPlan.getWorker(id));
+		selected = chosen;
+		selectedPools = view;
+		selectedPlan = aPlan;
+	}
+	
+	//The chosen ids from the passed pools, along with their stages in a global plan, or null if there is no selection
+	private synchronized int[] getSelectedIds(ExecutionPlan aPlan, String ...poolNames) {
+		if(selection == null)
+			return null;
+		select(aPlan);
+		List<Integer> ids = new ArrayList<>();
+		for(String aPoolName : poolNames) {
+			int p = aPlan.getPoolId(aPoolName);
+			for(int id = aPlan.getPoolStart(p); id < aPlan.getPoolEnd(p); id++)
+				if(selected[id])
+					ids.add(id);
+			if(aPlan.isGlobal())
+				ids.add(aPlan.getStage(p));
+		}
+		int[] output = new int[ids.size()];
+		for(int i = 0; i < output.length; i++)
+			output[i] = ids.get(i);
+		return output;
+	}
 	/***
 	 * Starts all pools in the order they were added.
 	 * @return this - for method chaining.
 	 * @throws InterruptedException Thrown when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 */
 	public WorkerPool start() throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
@@ -664,12 +1415,14 @@ public class WorkerPool {
 	 * Note this does not block execution until it completes for that use startAsyncAndJoin
 	 * @return this - for method chaining.
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 */
 	public WorkerPool startAsync() throws AlreadyRunningException, DuplicateThreadNameException, CircularPrecedenceConstraintException {
 		if(keys.size() > 1)
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolStartAllPollsLevel(), LoggingTemplate.getPoolStartAllPools(), keys.size());
+		if(globalDag)
+			return startGlobalAsync(keys.toArray(new String[keys.size()]));
 		//startOnePool removes the key from the pool when its done
 		for(String key : keys) {
 			startOnePoolAsync(key);
@@ -681,7 +1434,7 @@ public class WorkerPool {
 	 * @return this - for method chaining
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws InterruptedException Thrown when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
 	 */
 	public WorkerPool startAsyncAndJoin() throws AlreadyRunningException, DuplicateThreadNameException, CircularPrecedenceConstraintException, InterruptedException {
@@ -693,23 +1446,23 @@ public class WorkerPool {
 	 * @return this - for method chaining.
 	 * @throws InterruptedException Thrown when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 */
 	public WorkerPool startOnePool( String poolName ) throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
+		getPlan(poolName);
+		
 		if(poolRunning.containsKey(poolName)) {
 			throw new AlreadyRunningException("The pool " + poolName + " is already running.");
 		} else {
 			poolRunning.put(poolName,dummy);
 		}
 		
-		checkThreadNames();
-		checkForPrecedenceLoop();
-		
 		startOnePoolHelper(poolName);
 		
-		if(exitOnError && getStatus(poolName).equals(Status.FAILED)) {
+		if(exitOnError && isError(getStatus(poolName))) {
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolExitOnErrorLevel(), LoggingTemplate.getPoolExitOnError(), poolName);
+			syncJournal();
 			System.exit(-1);
 		}
 		
@@ -721,19 +1474,23 @@ public class WorkerPool {
 	 * @return this - for method chaining
 	 * @throws InterruptedException Thrown when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 */
 	public WorkerPool startPools(String ...poolNames) throws DuplicateThreadNameException, CircularPrecedenceConstraintException, InterruptedException, AlreadyRunningException {
-		checkThreadNames();
-		checkForPrecedenceLoop();
+		getPlan();
 		
 		Timer timer = new Timer().start();
 		boolean log = keys.size() > 1;
 		if(log)
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolStartAllPollsLevel(), LoggingTemplate.getPoolStartAllPools(), poolNames.length);
 		
-		for(int i = 0; i < poolNames.length; i++) {
+		if(globalDag) {
+			markRunning(poolNames);
+			startGlobalHelper(poolNames);
+		}
+		
+		for(int i = 0; i < poolNames.length && !globalDag; i++) {
 			String aPoolName = poolNames[i];
 			if(poolRunning.containsKey(aPoolName)) {
 				throw new AlreadyRunningException("The pool " + aPoolName + " is already running.");
@@ -753,8 +1510,9 @@ public class WorkerPool {
 		if(log)
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolFinishedStartLevel(), LoggingTemplate.getPoolStartFinished(), LoggingTemplate.applyTimerToString( timer ));
 		
-		if(exitOnError && getStatus(poolNames).equals(Status.FAILED)) {
+		if(exitOnError && isError(getStatus(poolNames))) {
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolExitOnErrorLevel(), LoggingTemplate.getPoolExitOnError(), getFailedPools(poolNames));
+			syncJournal();
 			System.exit(-1);
 		}
 		
@@ -765,10 +1523,12 @@ public class WorkerPool {
 	 * @param poolName The name of the pool of workers you wish to run
 	 * @return this - for method chaining.
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 */
 	public WorkerPool startOnePoolAsync( String poolName ) throws AlreadyRunningException, DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		getPlan(poolName);
+		
 		if(poolRunning.containsKey(poolName)) {
 			throw new AlreadyRunningException("The pool " + poolName + " is already running.");
 		} else {
@@ -776,10 +1536,7 @@ public class WorkerPool {
 		}
 		keys.remove(poolName);
 		
-		checkThreadNames();
-		checkForPrecedenceLoop();
-		
-		Thread aThread = new Thread(new PoolWrapper( this, poolName ));
+		Thread aThread = new Thread(new PoolWrapper( this, false, poolName ));
 		aThread.setName(poolName);
 		aThread.start();
 		poolRunning.put(poolName,aThread);
@@ -792,19 +1549,46 @@ public class WorkerPool {
 	 * @return this - for method chaining
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 */
 	public WorkerPool startPoolsAsync(String ...poolNames) throws AlreadyRunningException, DuplicateThreadNameException, CircularPrecedenceConstraintException {
 		if(poolNames.length > 1)
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolStartAllPollsLevel(), LoggingTemplate.getPoolStartAllPools(), poolNames.length);
 		
 		if(poolNames != null && poolNames.length > 0) {
+			if(globalDag)
+				return startGlobalAsync(poolNames);
 			for(String aPool : poolNames) {
 				startOnePoolAsync( aPool );
 			}
 		}
 		return this;
 	}
+	
+	//Starts the passed pools as one run of the global plan, on a single thread registered as running each of them
+	private WorkerPool startGlobalAsync(String ...poolNames) throws AlreadyRunningException, DuplicateThreadNameException, CircularPrecedenceConstraintException {
+		getPlan(poolNames);
+		markRunning(poolNames);
+		for(String aPool : poolNames)
+			keys.remove(aPool);
+		
+		Thread aThread = new Thread(new PoolWrapper( this, true, poolNames ));
+		aThread.setName(String.join(", ", poolNames));
+		aThread.start();
+		for(String aPool : poolNames)
+			poolRunning.put(aPool,aThread);
+		
+		return this;
+	}
+	
+	//All or nothing, so a failed check doesn't leave some of the pools marked as running
+	private void markRunning(String ...poolNames) throws AlreadyRunningException {
+		for(String aPoolName : poolNames)
+			if(poolRunning.containsKey(aPoolName))
+				throw new AlreadyRunningException("The pool " + aPoolName + " is already running.");
+		for(String aPoolName : poolNames)
+			poolRunning.put(aPoolName,dummy);
+	}
 	/***
 	 * Used to start multiple pool asynchronous, but then wait for all pools to complete before continuing.
 	 * This is just a convince function that calls startPoolAysnc followed by joinPools (with 0 from waitMilliseconds).
@@ -812,7 +1596,7 @@ public class WorkerPool {
 	 * @return this - for method chaining
 	 * @throws AlreadyRunningException thrown if a pool that is already running is asked to start
 	 * @throws DuplicateThreadNameException thrown if any thread name is duplicated, even across pools
-	 * @throws CircularPrecedenceConstraintException thrown if two workers both list each other as Precedence Constraints
+	 * @throws CircularPrecedenceConstraintException thrown if the precedence constraints of any workers form a loop
 	 * @throws InterruptedException Thrown when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
 	 */
 	public WorkerPool startPoolsAsyncAndJoin(String ...poolNames) throws AlreadyRunningException, DuplicateThreadNameException, CircularPrecedenceConstraintException, InterruptedException {
@@ -826,8 +1610,9 @@ public class WorkerPool {
 		if(log)
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolFinishedStartLevel(), LoggingTemplate.getPoolStartFinished(), LoggingTemplate.applyTimerToString( timer ));
 		
-		if(exitOnError && getStatus(poolNames).equals(Status.FAILED)) {
+		if(exitOnError && isError(getStatus(poolNames))) {
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolExitOnErrorLevel(), LoggingTemplate.getPoolExitOnError(), getFailedPools(poolNames));
+			syncJournal();
 			System.exit(-1);
 		}
 		return this;
@@ -835,7 +1620,7 @@ public class WorkerPool {
 	
 	//Manages retry pool
 	WorkerPool startOnePoolHelper( String poolName) throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
-		if(pools.get(poolName).isEmpty()) {
+		if(getPoolWorkers(poolName).isEmpty()) {
 			LoggingTemplate.log(logger, LoggingTemplate.getPoolEmptyLevel(), LoggingTemplate.getPoolEmpty(), poolName);
 			keys.remove(poolName);
 			return this;
@@ -844,29 +1629,34 @@ public class WorkerPool {
 		int maxRetry = 0;
 		if(poolRetry.containsKey(poolName))
 			maxRetry = poolRetry.get(poolName);
-		int retryWait = 0;
-		if(poolRetryWaitSeconds.containsKey(poolName))
-			retryWait = poolRetryWaitSeconds.get(poolName);
+		RetryPolicy retryPolicy = getPoolRetryPolicy(poolName);
 		boolean rerunSucess = false;
 		if(poolRetryRerunSuccess.containsKey(poolName))
 			rerunSucess = poolRetryRerunSuccess.get(poolName);
 		
 		int retry = 0;
+		PoolRun run = null;
+		int[] rerun = null;
 		while(retry <= maxRetry) {
 			if(retry > 0) {
-				LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getRetry(), "Pool", poolName, maxRetry, retry, retryWait);
-				Thread.sleep(retryWait * 1000);
-				for( WorkerInterface aWorker : pools.get(poolName) ) {
-					if(rerunSucess || aWorker.getStatus() != Status.SUCCESS)
+				long retryWait = retryPolicy.getDelayMilliseconds(retry);
+				LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getRetry(), "Pool", poolName, maxRetry, retry, retryWait / 1_000.0);
+				Thread.sleep(retryWait);
+				if(rerunSucess) {
+					rerun = null;
+					for( WorkerInterface aWorker : getPoolWorkers(poolName) )
 						aWorker.setStatus(Status.PENDING);
+				} else {
+					//Only what failed, and what is downstream of it, runs again
+					for(int id : rerun)
+						run.getPlan().getWorker(id).setStatus(Status.PENDING);
 				}
 			}
-			startOnePoolHelperHelper(poolName);
-			if(getStatus(poolName) != Status.SUCCESS) {
-				retry++;
-			} else {
+			run = runPools(run == null ? null : run.getPlan(), rerun, poolName);
+			if(run.isSuccess())
 				break;
-			}
+			rerun = run.getRerun(run.getPlan().getPoolId(poolName));
+			retry++;
 		}
 		
 		if(poolRunning.containsKey(poolName))
@@ -875,109 +1665,163 @@ public class WorkerPool {
 		return this;
 	}
 	
-	//Does the actual work to run a pool
-	WorkerPool startOnePoolHelperHelper( String poolName) throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
-		//Create signal to allow workers to notify this method when they're done
-		Signal signal = new Signal();
-		Timer timer = new Timer().start();
-		List<Thread> threadPool = new ArrayList<>();
-		lastMsg.put(poolName, 0L);
-		lastWarn.put(poolName, 0L);
-		logStart(poolName);
-		//List to hold workers with precedence constraints that are waiting for the condition to be met
-		List<WorkerInterface> waiting = null;
-		//Loop over all workers and assign them threads or put them in waiting
-		boolean keepGoing = true;
-		List<WorkerInterface> myPool = new ArrayList<>();
-		for( WorkerInterface aWorker : pools.get(poolName) ) 
-			myPool.add(aWorker);
-		
-		/* Because of race conditions its possible for us to get the the synchronized block, 
-		 * but the thread count to be met we can't assume we'll always deal with a worker on the first
-		 * try, thus the odd loop and use of myPool
-		 */
-		while( !myPool.isEmpty() ) {
-			WorkerInterface aWorker = myPool.get(0);
-			//Check to see if worker is ready to run (based on precedence)
-			if(aWorker.getPrecedenceConstraint() == null || checkPrecedence(aWorker, pools.get(poolName))) {
-				waitForThreadPool(signal,threadPool,poolName,timer);
-				synchronized(threadCount) {
-					if(threadCount <= maxThreadCount) {
-						//Create new thread, name thread, start thread, and then stored it in threadPool
-						threadCount++;
-						Thread aThread = new Thread(new WorkerWrapper( signal, aWorker ));
-						aThread.setName(aWorker.getThreadName());
-						aThread.start();
-						threadPool.add(aThread);
-						myPool.remove(0);
-					}
-				}
+	//Manages retry pool when the passed pools are run together as one global graph. A failed pool is retried along with any worker in the other pools that only failed because of it.
+	WorkerPool startGlobalHelper( String ...poolNames) throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
+		List<String> toRun = new ArrayList<>();
+		for(String aPoolName : poolNames) {
+			if(getPoolWorkers(aPoolName).isEmpty()) {
+				LoggingTemplate.log(logger, LoggingTemplate.getPoolEmptyLevel(), LoggingTemplate.getPoolEmpty(), aPoolName);
+				keys.remove(aPoolName);
 			} else {
-			//If not yet ready, add to waiting
-				if(waiting == null)
-					waiting = new ArrayList<>();
-				waiting.add(aWorker);
-				myPool.remove(0);
-			}
-			
-			if(noNewThreadsOnFailure && getStatus( poolName ) == Status.FAILED){
-				keepGoing = false;
-				LoggingTemplate.log(logger, LoggingTemplate.getPoolStopNextWorkerOnErrorLevel(), LoggingTemplate.getPoolStopNextWorkerOnError(), poolName);
-				break;
+				toRun.add(aPoolName);
 			}
 		}
+		String[] runNames = toRun.toArray(new String[toRun.size()]);
 		
-		//While there is stuff in waiting to do
-		while(keepGoing && waiting != null && waiting.size() > 0) {
-			//Loop over all waiting workers
-			Iterator<WorkerInterface> workerItr = waiting.iterator();
-			while(workerItr.hasNext()) {
-				WorkerInterface aWorker = workerItr.next();
-				//worker is ready, start it
-				if(checkPrecedence(aWorker, pools.get(poolName))){
-					//Wait here if we've reached the max thread pool size
-					waitForThreadPool(signal,threadPool,poolName,timer);
-					//Create new thread, name thread, start thread, and then stored it in threadPool
-					synchronized(threadCount) {
-						if(threadCount < maxThreadCount) {
-							threadCount++;
-							Thread aThread = new Thread(new WorkerWrapper( signal, aWorker ));
-							aThread.setName(aWorker.getThreadName());
-							aThread.start();
-							threadPool.add(aThread);
-						}
-					}
-					//remove from waiting 
-					workerItr.remove();
-				} else if (StatusMeta.isFailed(getWorkerStatus(aWorker))) {
-					workerItr.remove();
+		Map<String,Integer> retries = new HashMap<>();
+		//When each failed pool is due to be retried, so each waits out its own retry policy rather than the longest of them
+		Map<String,Long> due = new HashMap<>();
+		while(runNames.length > 0) {
+			startOnePoolHelperHelper(runNames);
+			
+			long now = System.currentTimeMillis();
+			for(String aPoolName : runNames) {
+				if(getStatus(aPoolName) == Status.SUCCESS) {
+					//Only failed because of another pool, whose retry has already fixed it
+					due.remove(aPoolName);
+					continue;
 				}
+				if(due.containsKey(aPoolName))
+					continue;
+				int maxRetry = poolRetry.containsKey(aPoolName) ? poolRetry.get(aPoolName) : 0;
+				int retry = retries.containsKey(aPoolName) ? retries.get(aPoolName) + 1 : 1;
+				if(retry > maxRetry)
+					continue;
+				long wait = getPoolRetryPolicy(aPoolName).getDelayMilliseconds(retry);
+				LoggingTemplate.log(logger, LoggingTemplate.getRetryLevel(), LoggingTemplate.getRetry(), "Pool", aPoolName, maxRetry, retry, wait / 1_000.0);
+				retries.put(aPoolName, retry);
+				due.put(aPoolName, now + wait);
 			}
-			if(waiting != null && waiting.size() > 0)
-				signal.doWait();
-			if(noNewThreadsOnFailure && getStatus( poolName ) == Status.FAILED) {
-				LoggingTemplate.log(logger, LoggingTemplate.getPoolStopNextWorkerOnErrorLevel(), LoggingTemplate.getPoolStopNextWorkerOnError(), poolName);
+			if(due.isEmpty())
 				break;
+			
+			//Wait for the first pool that is due, any others due by then are retried with it, the rest keep waiting while it runs
+			long next = Long.MAX_VALUE;
+			for(long aTime : due.values())
+				next = Math.min(next, aTime);
+			if(next > now)
+				Thread.sleep(next - now);
+			now = System.currentTimeMillis();
+			List<String> retrying = new ArrayList<>();
+			for(Map.Entry<String,Long> anEntry : due.entrySet())
+				if(anEntry.getValue() <= now)
+					retrying.add(anEntry.getKey());
+			for(String aPoolName : retrying) {
+				due.remove(aPoolName);
+				boolean rerunSucess = poolRetryRerunSuccess.containsKey(aPoolName) && poolRetryRerunSuccess.get(aPoolName);
+				for( WorkerInterface aWorker : getPoolWorkers(aPoolName) ) {
+					if(rerunSucess || aWorker.getStatus() != Status.SUCCESS)
+						aWorker.setStatus(Status.PENDING);
+				}
+			}
+			//Anything that failed only because of a pool that is being retried gets another chance too. If its failed parent is not being retried yet it will simply fail again, and get another chance when it is.
+			for(String aPoolName : runNames) {
+				for( WorkerInterface aWorker : getPoolWorkers(aPoolName) ) {
+					if(aWorker.getStatus() == Status.PRECEDENCE_FAILED)
+						aWorker.setStatus(Status.PENDING);
+				}
 			}
 		}
 		
-		//Wait for all threads in the pool to complete
-		long waitTime = logEnd(poolName,timer,true);		
-		for(Thread aThread : threadPool) {
-			while(aThread.isAlive()) {
-				aThread.join(waitTime);
-				waitTime = logEnd(poolName,timer,true);
-			}
-			threadMinus();
+		for(String aPoolName : poolNames)
+			if(poolRunning.containsKey(aPoolName))
+				poolRunning.remove(aPoolName);
+		
+		return this;
+	}
+	
+	//Does the actual work to run one pool, or with global DAG any number of pools together
+	WorkerPool startOnePoolHelperHelper( String ...poolNames) throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
+		runPools(null, null, poolNames);
+		return this;
+	}
+	
+	//Runs the passed ids of rerunPlan from the passed pools, or the whole pools if rerun is null, and returns the finished run
+	private PoolRun runPools( ExecutionPlan rerunPlan, int[] rerun, String ...poolNames) throws InterruptedException, DuplicateThreadNameException, CircularPrecedenceConstraintException, AlreadyRunningException {
+		Timer timer = new Timer().start();
+		//Workers are started by the dispatcher as their parents finish, this thread only has to wait and report
+		ExecutionPlan aPlan = getPlan(poolNames);
+		for(String aPoolName : poolNames) {
+			lastMsg.put(aPoolName, 0L);
+			lastWarn.put(aPoolName, 0L);
+			//Nothing in the pool is running yet, so its workers can start reporting to new counts
+			StatusCounts counts = poolStatus.get(aPoolName);
+			if(counts == null || !counts.isCurrent(getPoolWorkers(aPoolName)))
+				poolStatus.put(aPoolName, new StatusCounts(getPoolWorkers(aPoolName)));
+			for(WorkerInterface aWorker : getPoolWorkers(aPoolName))
+				if(aWorker instanceof Worker)
+					((Worker) aWorker).setStatusJournal(statusJournal);
+		}
+		
+		//If the plan has been recompiled since (another pool added a worker for instance) the ids no longer line up, so run the whole pools. Anything that succeeded is still skipped.
+		int[] ids = aPlan == rerunPlan ? rerun : null;
+		//A retry only reruns chosen workers, so only a whole run has to be narrowed to the selection
+		if(ids == null)
+			ids = getSelectedIds(aPlan, poolNames);
+		PoolRun run = new PoolRun(this, aPlan, ids, poolNames);
+		for(String aPoolName : poolNames)
+			logStart(run, aPoolName);
+		try {
+			run.startDeadlines();
+			dispatcher.add(run);
+			long waitTime = logRunning(run,timer);
+			while(!run.await(waitTime))
+				waitTime = logRunning(run,timer);
+		} catch (InterruptedException e) {
+			//A run never outlives the thread that started it, so cancel whatever is still running and wait for it before giving up
+			run.cancel();
+			run.awaitUninterruptibly();
+			throw e;
+		} finally {
+			run.cancelDeadlines();
+			dispatcher.remove(run);
+			saveFingerprints();
+			syncJournal();
 		}
 		
 		timer.stop();
-		logEnd(poolName,timer, false);
-		keys.remove(poolName);
-		lastMsg.remove(poolName);
-		lastWarn.remove(poolName);
+		for(String aPoolName : poolNames) {
+			logEnd(run,aPoolName,timer, false);
+			if(eventPublisher.hasSubscribers())
+				eventPublisher.publish(new WorkerEvent(EventType.POOL_FINISHED, aPoolName, null, getStatus(aPoolName), timer.getDuration(), 0, null));
+			keys.remove(aPoolName);
+			lastMsg.remove(aPoolName);
+			lastWarn.remove(aPoolName);
+		}
 		
-		return this;
+		return run;
+	}
+	//Forces the journal to disk at the end of each run, and before exiting on an error
+	private void syncJournal() {
+		StatusJournal journal = statusJournal;
+		if(journal == null)
+			return;
+		try {
+			journal.sync();
+		} catch (IOException e) {
+			LoggingTemplate.log(logger, LoggingTemplate.getJournalFailedLevel(), LoggingTemplate.getJournalFailed(), journal.getPath(), e.toString());
+		}
+	}
+	
+	private void saveFingerprints() {
+		FingerprintStore store = fingerprintStore;
+		if(store == null)
+			return;
+		try {
+			store.save();
+		} catch (IOException e) {
+			LoggingTemplate.log(logger, LoggingTemplate.getFingerprintSaveFailedLevel(), LoggingTemplate.getFingerprintSaveFailed(), store.getPath(), e.toString());
+		}
 	}
 	/***
 	 * Used in conjunction with any of Async methods to block execution until the passed poolName completes or waitMilliseconds elapses. If waitMilliseconds = 0 then it will wait forever for the execution to complete.
@@ -1016,21 +1860,6 @@ public class WorkerPool {
 		return this;
 	}
 	
-	private void waitForThreadPool(Signal signal, List<Thread> threadPool, String poolName, Timer timer) {
-		//If thread pool is bigger than maxThreadCount check to see if threads can be pruned, if we can't then wait
-		while(getThreadCount() >= maxThreadCount) {
-			//Loop over threads, pruning if they're no longer alive.
-			Iterator<Thread> threadItr = threadPool.iterator();
-			while(threadItr.hasNext())
-				if(!threadItr.next().isAlive()) {
-					threadItr.remove();
-					threadMinus();
-				}
-
-			if(getThreadCount() > maxThreadCount)
-				signal.doWait();
-		}
-	}
 	private Status getWorkerStatus(WorkerInterface worker) {
 		if(worker.getStatus() == null)
 			return Status.EMPTY;
@@ -1038,14 +1867,18 @@ public class WorkerPool {
 	}
 	
 	/***
-	 * Gets the composite status of an entire pool.
+	 * Gets the composite status of an entire pool. Once a pool has been started this takes constant time, workers keep a count of how many of them are in each status as they change.
+	 * If a selection is set (see setSelection) only the chosen workers of the pool count.
 	 * @param poolName the name of the pool you want to check
 	 * @return the composite status of the pool
 	 */
 	public Status getStatus( String poolName ) {
+		StatusCounts counts = poolStatus.get(poolName);
+		if(counts != null && counts.isCurrent(getPoolWorkers(poolName)))
+			return counts.getStatus();
 		Status output = Status.EMPTY;
 		int min = Integer.MAX_VALUE;
-		for(WorkerInterface aWorker : pools.get(poolName)) {
+		for(WorkerInterface aWorker : getPoolWorkers(poolName)) {
 			if(StatusMeta.getSeverity(getWorkerStatus(aWorker)) < min) {
 				min = StatusMeta.getSeverity(getWorkerStatus(aWorker));
 				output = getWorkerStatus(aWorker);
@@ -1083,7 +1916,7 @@ public class WorkerPool {
 		StringBuilder output = new StringBuilder();
 		First first = new First();
 		for(String aPoolName : poolNames) {
-			if(getStatus(aPoolName).equals(Status.FAILED)) {
+			if(isError(getStatus(aPoolName))) {
 				if(!first.first())
 					output.append(", ");
 				output.append(aPoolName);
@@ -1092,27 +1925,33 @@ public class WorkerPool {
 		return output.toString();
 	}
 	
-	private void logStart( String aKey ) {
+	//A worker failing or timing out fails its pool, other failed statuses only follow from those
+	private static boolean isError( Status aStatus ) {
+		return aStatus.equals(Status.FAILED) || aStatus.equals(Status.TIMED_OUT);
+	}
+	
+	private void logStart( PoolRun run, String poolName ) {
+		ExecutionPlan aPlan = run.getPlan();
+		int poolId = aPlan.getPoolId(poolName);
 		StringBuilder output = new StringBuilder();
-		output.append("Staring Pool: ").append(aKey).append(". Containing: ");
-		for(WorkerInterface aWorker : pools.get(aKey)) {
-			output.append("\n\tWorker: ").append(aWorker.getThreadName());
-			Set<String> pc = getCurrentPrecedenceConstraint( aWorker, aKey);
-			if(pc.size() > 0) {
-				output.append(" (Waiting on thread").append((pc.size() > 1) ? "s" : "").append(": ");
-				First first = new First();
-				for(String aConstraint : pc) {
-					if(!first.first())
-						output.append(", ");
-					output.append(aConstraint);
-				}
-				output.append(")");
-			}
+		output.append("Staring Pool: ").append(poolName).append(". Containing: ");
+		for(int id : run.getMembers(poolId)) {
+			output.append("\n\tWorker: ").append(aPlan.getWorker(id).getThreadName());
+			appendCurrentPrecedenceConstraint(output, aPlan, id);
 		}
 		LoggingTemplate.log(logger, LoggingTemplate.getPoolStartLevel(), output.toString());
 	}
 	
-	private long logEnd( String aKey, Timer timer, boolean running) {
+	//Logs each pool in the run that is still open, and returns the seconds until the next message is due
+	private long logRunning( PoolRun run, Timer timer ) {
+		long waitTime = Long.MAX_VALUE;
+		for(String aPoolName : run.getPoolNames())
+			if(StatusMeta.isOpen(getStatus(aPoolName)))
+				waitTime = Math.min(waitTime, logEnd(run, aPoolName, timer, true));
+		return waitTime == Long.MAX_VALUE ? 1 : waitTime;
+	}
+	
+	private long logEnd( PoolRun run, String aKey, Timer timer, boolean running) {
 		Level level = Level.info;
 		long waitTime = -1;
 		if(running) {
@@ -1141,39 +1980,43 @@ public class WorkerPool {
 			output.append(". Completed with status: ").append(getStatus(aKey)).append(". It ran for: ").append(timer.toString()).append(". Detail stauts: ");
 		}
 		
-		for(WorkerInterface aWorker : pools.get(aKey)) {
+		ExecutionPlan aPlan = run.getPlan();
+		int poolId = aPlan.getPoolId(aKey);
+		for(int id : run.getMembers(poolId)) {
+			WorkerInterface aWorker = aPlan.getWorker(id);
 			output.append("\n\tWorker: ").append(aWorker.getThreadName()).append(" : ").append(getWorkerStatus(aWorker));
-			Set<String> pc = getCurrentPrecedenceConstraint( aWorker, aKey);
-			if(pc.size() > 0) {
-				output.append(" (Waiting on thread").append((pc.size() > 1) ? "s" : "").append(": ");
-				First first = new First();
-				for(String aConstraint : pc) {
-					if(!first.first())
-						output.append(", ");
-					output.append(aConstraint);
-				}
-				output.append(")");
-			}
+			appendCurrentPrecedenceConstraint(output, aPlan, id);
 		}
 		LoggingTemplate.log(logger, level, output.toString());
 		return waitTime;
 	}
 	
-	private Set<String> getCurrentPrecedenceConstraint(WorkerInterface toCheck, String aKey ){
-		List<WorkerInterface> pool = pools.get(aKey);
-		Set<String> output = new HashSet<>();
-		
-		if(toCheck.getPrecedenceConstraint() == null || toCheck.getPrecedenceConstraint().size() == 0)
-			return output;
-		for(String aConstraint : toCheck.getPrecedenceConstraint()) {
-			for(WorkerInterface aWorker : pool) {
-				if(aConstraint.equalsIgnoreCase(aWorker.getThreadName())) {
-					if(StatusMeta.isOpen(getWorkerStatus(aWorker))) {
-						output.add(aWorker.getThreadName());
-					}
-				}
+	//Appends the parents of the passed worker that have not finished yet
+	private void appendCurrentPrecedenceConstraint( StringBuilder output, ExecutionPlan aPlan, int id ) {
+		Csr parents = aPlan.parents();
+		First first = null;
+		for(int e = parents.offsets[id]; e < parents.offsets[id + 1]; e++) {
+			int parent = parents.targets[e];
+			if(!StatusMeta.isOpen(aPlan.getStatus(parent)))
+				continue;
+			if(first == null) {
+				first = new First();
+				output.append(" (Waiting on thread").append((openParentCount(aPlan, id) > 1) ? "s" : "").append(": ");
 			}
+			if(!first.first())
+				output.append(", ");
+			output.append(aPlan.getName(parent));
 		}
-		return output;
+		if(first != null)
+			output.append(")");
+	}
+	
+	private int openParentCount( ExecutionPlan aPlan, int id ) {
+		Csr parents = aPlan.parents();
+		int count = 0;
+		for(int e = parents.offsets[id]; e < parents.offsets[id + 1]; e++)
+			if(StatusMeta.isOpen(aPlan.getStatus(parents.targets[e])))
+				count++;
+		return count;
 	}
 }
@@ -1,17 +1,267 @@
 package org.thedryden.workmanager;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
 class WorkerWrapper implements Runnable {
-	private Signal signal;
+	//Workers that don't override run can be run one attempt at a time, so they wait out their retries without a thread
+	private static final ClassValue<Boolean> STEPPABLE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return type.getMethod("run").getDeclaringClass() == Worker.class;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+	};
+
+	private PoolRun run;
+	private int id;
 	private WorkerInterface worker;
-	
-	public WorkerWrapper(Signal signal, WorkerInterface worker) {
-		this.signal = signal;
+	private Set<String> resourceTags;
+	private int slots;
+	private Thread thread;
+	private boolean cancelled;
+	private Timer timer;
+	private boolean resuming;
+	private boolean waiting;
+	private ScheduledFuture<?> backoff;
+	private ScheduledFuture<?> deadline;
+	private final CancellationToken cancellationToken;
+	private boolean timedOut;
+	private boolean abandoned;
+	private boolean finished;
+	private long asyncDelay;
+
+	public WorkerWrapper(PoolRun run, int id, WorkerInterface worker, Set<String> resourceTags, int slots) {
+		this.run = run;
+		this.id = id;
 		this.worker = worker;
+		this.resourceTags = resourceTags;
+		this.slots = slots;
+		this.resuming = false;
+		this.waiting = false;
+		this.backoff = null;
+		this.deadline = null;
+		this.cancellationToken = new CancellationToken();
+		this.timedOut = false;
+		this.abandoned = false;
+		this.finished = false;
+		this.asyncDelay = -1;
+		//Started here rather than in run, so a worker that times out before it gets a thread still has a duration
+		this.timer = new Timer().start();
+	}
+
+	//Hands over the slots this worker holds, once, to whichever of finishing or going idle (an AsyncWorker waiting on its stage, or a Worker waiting to retry) gives them back first
+	synchronized int takeSlots() {
+		int taken = slots;
+		slots = 0;
+		return taken;
+	}
+
+	//Hands over the resource permits this worker holds, once
+	synchronized Set<String> takeResourceTags() {
+		Set<String> taken = resourceTags;
+		resourceTags = Collections.emptySet();
+		return taken;
+	}
+
+	//Called once a worker that waited to retry has its slots and permits back, the next run carries on with the next attempt
+	synchronized void resume(Set<String> resourceTags, int slots) {
+		this.resourceTags = resourceTags;
+		this.slots = slots;
+		this.resuming = true;
+	}
+
+	synchronized void startWaitToRetry() {
+		waiting = true;
+	}
+
+	synchronized void setBackoff(ScheduledFuture<?> backoff) {
+		if(waiting)
+			this.backoff = backoff;
+	}
+
+	//Returns true once, for whichever of the retry timer or cancel gets to the waiting worker first
+	synchronized boolean endWaitToRetry() {
+		if(!waiting)
+			return false;
+		waiting = false;
+		if(backoff != null)
+			backoff.cancel(false);
+		backoff = null;
+		return true;
+	}
+
+	synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	synchronized boolean isFinished() {
+		return finished;
+	}
+
+	synchronized void setDeadline(ScheduledFuture<?> deadline) {
+		if(finished)
+			deadline.cancel(false);
+		else
+			this.deadline = deadline;
+	}
+
+	CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	WorkerInterface getWorker() {
+		return worker;
 	}
 
 	@Override
 	public void run() {
-		worker.run();
-		signal.doNotify();
+		//Threads are reused, so name the thread after the worker only while it runs
+		Thread current = Thread.currentThread();
+		String originalName = current.getName();
+		current.setName(worker.getThreadName());
+		boolean async = false;
+		long delay = -1;
+		try {
+			boolean start;
+			boolean resumed;
+			synchronized(this) {
+				start = !cancelled;
+				if(start)
+					thread = current;
+				resumed = resuming;
+				resuming = false;
+			}
+			//Cancelled before it got a thread, so the worker never runs and fails below
+			if(start && worker instanceof AsyncWorker) {
+				AsyncWorker anAsyncWorker = (AsyncWorker) worker;
+				if(resumed)
+					anAsyncWorker.resumeAsync(this::retryAsync, () -> finish());
+				else
+					anAsyncWorker.runAsync(this::retryAsync, () -> finish());
+				async = true;
+			} else if(start && STEPPABLE.get(worker.getClass())) {
+				Worker aWorker = (Worker) worker;
+				if(resumed || aWorker.begin())
+					delay = aWorker.attempt();
+			} else if(start) {
+				worker.run();
+			}
+		} finally {
+			boolean late;
+			synchronized(this) {
+				thread = null;
+				if(asyncDelay >= 0) {
+					delay = asyncDelay;
+					asyncDelay = -1;
+				}
+				//Don't hand an interrupt meant for this worker on to whatever uses the thread next
+				Thread.interrupted();
+				late = abandoned;
+			}
+			current.setName(originalName);
+			if(late) {
+				//Timed out while it kept this thread, it has already been finished
+				run.threadReturned(worker);
+			} else if(delay >= 0) {
+				//Waits to retry holding no thread, slots or permits
+				run.waitToRetry(id, this, delay);
+			} else if(async) {
+				//While its stage is pending an AsyncWorker holds neither a thread nor slots, completing it calls complete
+				run.releaseSlots(this);
+			} else {
+				finish();
+			}
+		}
+	}
+
+	//An AsyncWorker attempt failed with retries left. If it failed before workerAsync returned, run is still going, so it waits to retry once it has let go of the thread.
+	private void retryAsync(long delay) {
+		synchronized(this) {
+			if(thread == Thread.currentThread()) {
+				asyncDelay = delay;
+				return;
+			}
+		}
+		run.waitToRetry(id, this, delay);
+	}
+
+	//Completes the worker in the run, once, whether it finished or timed out first
+	void finish() {
+		ScheduledFuture<?> aDeadline;
+		boolean aTimedOut;
+		boolean aCancelled;
+		synchronized(this) {
+			if(finished)
+				return;
+			finished = true;
+			aDeadline = deadline;
+			deadline = null;
+			aTimedOut = timedOut;
+			aCancelled = cancelled;
+		}
+		if(aDeadline != null)
+			aDeadline.cancel(false);
+		//If run didn't leave the worker closed it never will, so count it as a failure rather than leave its children waiting
+		Status aStatus = worker.getStatus();
+		if(aTimedOut)
+			worker.setStatus(Status.TIMED_OUT);
+		else if(aStatus != null && StatusMeta.isOpen(aStatus))
+			worker.setStatus(aCancelled ? Status.CANCELLED : Status.FAILED);
+		run.complete(id, timer.stop().getDuration());
+	}
+
+	//Fails a worker that was cancelled while it waited to retry, unless it has already been finished
+	void giveUp() {
+		if(isFinished())
+			return;
+		((Worker) worker).giveUp();
+		finish();
+	}
+
+	/*
+	 * Cancels the worker because it ran past its timeout, or its pool did, and finishes it straight away as TIMED_OUT so its slots and permits are given back and its children can be settled.
+	 * If the worker is still running on a thread that thread is left to return on its own, and the backend is allowed one more thread until it does. Returns false if the worker had already finished.
+	 */
+	boolean timeOut() {
+		boolean keptThread;
+		synchronized(this) {
+			if(finished)
+				return false;
+			timedOut = true;
+			cancelled = true;
+			cancellationToken.cancel(true);
+			keptThread = thread != null;
+			if(keptThread) {
+				thread.interrupt();
+				abandoned = true;
+			}
+			if(worker instanceof AsyncWorker)
+				((AsyncWorker) worker).cancelAsync();
+		}
+		if(keptThread)
+			run.threadAbandoned(worker);
+		//A worker waiting to retry just stops waiting, it is finished here rather than resumed
+		endWaitToRetry();
+		finish();
+		return true;
+	}
+
+	//Interrupts the worker if it is running, or stops it from running at all if it hasn't started yet. A worker waiting to retry gives up straight away.
+	void cancel() {
+		synchronized(this) {
+			cancelled = true;
+			cancellationToken.cancel(false);
+			if(thread != null)
+				thread.interrupt();
+			if(worker instanceof AsyncWorker)
+				((AsyncWorker) worker).cancelAsync();
+		}
+		if(endWaitToRetry())
+			run.resume(id, this);
 	}
 }
@@ -0,0 +1,41 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * ExecutionBackend that runs every worker on its own virtual thread, so workers that block on I/O don't hold a platform thread while they wait.
+ * Virtual threads need Java 21, so this class is only in the jar for Java 21 and later JVMs, and only if the jar was built with Java 21 or later. Get one with ExecutionBackend.virtualThreads, which says which of those is missing rather than failing to load the class.
+ * There is no thread pool to size: WorkerPool's maxThreadCount becomes a plain limit on how many workers run at once, and can be set as high as the work (not the number of cores) allows.
+ * @author Matthew Dryden
+ *
+ */
+public class VirtualThreadBackend implements ExecutionBackend {
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+	protected ExecutorService executor;
+
+	/***
+	 * Creates a backend that starts a new virtual thread for every worker.
+	 */
+	public VirtualThreadBackend() {
+		executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("workmanager-" + POOL_NUMBER.getAndIncrement() + "-virtual-", 1).factory());
+	}
+
+	@Override
+	public Future<?> submit(WorkerInterface worker, Runnable task) {
+		return executor.submit(task);
+	}
+
+	@Override
+	public void setMaxThreadCount(int maxThreadCount) {
+		//Nothing to resize, WorkerPool only ever hands over as many workers as maxThreadCount allows
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
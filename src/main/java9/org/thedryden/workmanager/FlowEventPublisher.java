@@ -0,0 +1,62 @@
+package org.thedryden.workmanager;
+
+import java.util.concurrent.Flow;
+
+/***
+ * Wraps an EventPublisher as a java.util.concurrent.Flow.Publisher of WorkerEvents, so a WorkerPool's events can be fed to any reactive streams library.
+ * java.util.concurrent.Flow needs Java 9, so this class is only in the jar for Java 9 and later JVMs (it is built into its multi-release section), on Java 8 subscribe to the EventPublisher with an EventSubscriber instead.
+ * Buffering, backpressure and dropping are the EventPublisher's: each Flow.Subscriber gets its own bounded buffer, and a slow one only ever loses events, it never holds up the workers.
+ * @author Matthew Dryden
+ *
+ */
+public class FlowEventPublisher implements Flow.Publisher<WorkerEvent> {
+	protected final EventPublisher publisher;
+
+	/***
+	 * Wraps the passed publisher, usually WorkerPool.getEventPublisher().
+	 * @param publisher the publisher to wrap
+	 */
+	public FlowEventPublisher(EventPublisher publisher) {
+		this.publisher = publisher;
+	}
+	/***
+	 * Returns the wrapped publisher.
+	 * @return the wrapped publisher
+	 */
+	public EventPublisher getEventPublisher() {
+		return publisher;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super WorkerEvent> subscriber) {
+		if(subscriber == null)
+			throw new NullPointerException("subscriber can't be null");
+		publisher.subscribe(new EventSubscriber() {
+			@Override
+			public void onSubscribe(EventSubscription subscription) {
+				subscriber.onSubscribe(new Flow.Subscription() {
+					@Override
+					public void request(long n) {
+						subscription.request(n);
+					}
+					@Override
+					public void cancel() {
+						subscription.cancel();
+					}
+				});
+			}
+			@Override
+			public void onNext(WorkerEvent event) {
+				subscriber.onNext(event);
+			}
+			@Override
+			public void onError(Throwable error) {
+				subscriber.onError(error);
+			}
+			@Override
+			public void onComplete() {
+				subscriber.onComplete();
+			}
+		});
+	}
+}